@@ -0,0 +1,84 @@
+package telegram.trickbot.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import telegram.trickbot.service.DeckManager;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DeckBenchmark {
+
+    @Param({"3x7", "3x9", "5x5"})
+    private String layout;
+
+    private DeckManager deckManager;
+    private SplittableRandom random;
+    private byte[] deck;
+    private byte[] choices;
+    private long seed;
+
+    @Setup
+    public void setUp() {
+        String[] size = layout.split("x");
+        deckManager = new DeckManager("cards/", ".jpg", Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        random = new SplittableRandom(42);
+        seed = random.nextLong();
+        choices = new byte[deckManager.getLayout().getRounds()];
+        for (int i = 0; i < choices.length; i++) {
+            choices[i] = (byte) (1 + random.nextInt(deckManager.getLayout().getPiles()));
+        }
+    }
+
+    // Every deck state is a valid input of the same cost, so the benchmarks keep working on one deck per iteration
+    // instead of paying for a per-invocation setup that would dwarf these nanosecond operations.
+    @Setup(Level.Iteration)
+    public void newDeck() {
+        deck = deckManager.newDeck(seed);
+    }
+
+    @Benchmark
+    public byte[] shuffleDeck() {
+        deckManager.shuffleDeck(deck, random);
+        return deck;
+    }
+
+    @Benchmark
+    public byte[] updateDeck() {
+        deckManager.updateDeck(deck, 1 + random.nextInt(deckManager.getLayout().getPiles()));
+        return deck;
+    }
+
+    @Benchmark
+    public void getPiles(Blackhole blackhole) {
+        List<String> pile1 = deckManager.getPile1(deck);
+        List<String> pile2 = deckManager.getPile2(deck);
+        List<String> pile3 = deckManager.getPile3(deck);
+        blackhole.consume(pile1);
+        blackhole.consume(pile2);
+        blackhole.consume(pile3);
+    }
+
+    @Benchmark
+    public byte[] replayDeck() {
+        return deckManager.replayDeck(seed, choices);
+    }
+
+}
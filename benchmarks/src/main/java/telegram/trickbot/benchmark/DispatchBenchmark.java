@@ -0,0 +1,124 @@
+package telegram.trickbot.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import telegram.trickbot.bot.Bot;
+import telegram.trickbot.bot.TrickHandler;
+import telegram.trickbot.bot.UpdateDeduplicator;
+import telegram.trickbot.bot.UpdateDispatcher;
+import telegram.trickbot.logging.TrickEvents;
+import telegram.trickbot.metrics.BotMetrics;
+import telegram.trickbot.service.CardMediaCache;
+import telegram.trickbot.service.DeckCatalog;
+import telegram.trickbot.service.DeckManager;
+import telegram.trickbot.service.MessagesManager;
+import telegram.trickbot.service.OutboundPipeline;
+import telegram.trickbot.service.OutboundRateLimiter;
+import telegram.trickbot.service.RoundComposer;
+import telegram.trickbot.session.SessionJournal;
+import telegram.trickbot.session.SessionManager;
+import telegram.trickbot.session.TrickStateCodec;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Covers updates that are handled synchronously; trick rounds go through the outbound pipeline.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DispatchBenchmark {
+    private static final long CHAT_ID = 123L;
+
+    private SessionManager sessionManager;
+    private OutboundPipeline outboundPipeline;
+    private Bot bot;
+    private Update textUpdate;
+    private Update pileUpdate;
+    private Update forgedStateUpdate;
+
+    @Setup
+    public void setUp() {
+        sessionManager = new SessionManager(Duration.ofMinutes(30), Duration.ofMinutes(1));
+        outboundPipeline = new OutboundPipeline(1);
+        BotMetrics metrics = new BotMetrics();
+        MessagesManager messagesManager = new MessagesManager(new StubSender(), new CardMediaCache(),
+                OutboundRateLimiter.unlimited());
+        TrickHandler trickHandler = new TrickHandler(new DeckManager("cards/", ".jpg"), DeckCatalog.empty(), sessionManager,
+                SessionJournal.disabled(), outboundPipeline, messagesManager, new RoundComposer(messagesManager),
+                new TrickStateCodec("benchmark"), metrics, new TrickEvents(), false);
+        bot = new Bot("0:benchmark", trickHandler,
+                new UpdateDispatcher(Executors.newVirtualThreadPerTaskExecutor(), metrics, new UpdateDeduplicator()));
+
+        textUpdate = textUpdate("hello");
+        pileUpdate = callbackUpdate("2");
+        forgedStateUpdate = callbackUpdate("t:AAAAAAAAACoCAQAAAAAAAAAAAAAAAAAA");
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionManager.shutdown();
+        outboundPipeline.shutdown();
+    }
+
+    @Benchmark
+    public void textMessage() {
+        bot.onUpdateReceived(textUpdate);
+    }
+
+    @Benchmark
+    public void pileWithoutTrick() {
+        bot.onUpdateReceived(pileUpdate);
+    }
+
+    @Benchmark
+    public void forgedState() {
+        bot.onUpdateReceived(forgedStateUpdate);
+    }
+
+    private static Update textUpdate(String text) {
+        Message message = message();
+        message.setText(text);
+        Update update = new Update();
+        update.setMessage(message);
+        return update;
+    }
+
+    private static Update callbackUpdate(String data) {
+        CallbackQuery callbackQuery = new CallbackQuery();
+        callbackQuery.setData(data);
+        callbackQuery.setMessage(message());
+        callbackQuery.setFrom(user());
+        Update update = new Update();
+        update.setCallbackQuery(callbackQuery);
+        return update;
+    }
+
+    private static Message message() {
+        Message message = new Message();
+        message.setChat(new Chat(CHAT_ID, "private"));
+        message.setFrom(user());
+        return message;
+    }
+
+    private static User user() {
+        return new User(CHAT_ID, "Benchmark", false);
+    }
+
+}
@@ -0,0 +1,99 @@
+package telegram.trickbot.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import telegram.trickbot.service.CardMediaCache;
+import telegram.trickbot.service.DeckLayout;
+import telegram.trickbot.service.DeckManager;
+import telegram.trickbot.service.MessagesManager;
+import telegram.trickbot.service.OutboundRateLimiter;
+import telegram.trickbot.session.TrickState;
+import telegram.trickbot.session.TrickStateCodec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MessagesBenchmark {
+    private static final long CHAT_ID = 123L;
+
+    private StubSender sender;
+    private MessagesManager uploadingManager;
+    private MessagesManager cachedManager;
+    private TrickStateCodec stateCodec;
+    private DeckLayout layout;
+    private List<String> pile;
+    private List<String> stateCallbacks;
+
+    @Setup
+    public void setUp() {
+        DeckManager deckManager = new DeckManager("cards/", ".jpg");
+        layout = deckManager.getLayout();
+        pile = deckManager.getPile1(deckManager.newDeck(42));
+        sender = new StubSender();
+
+        uploadingManager = new MessagesManager(sender, new CardMediaCache(), OutboundRateLimiter.unlimited());
+        CardMediaCache mediaCache = new CardMediaCache();
+        pile.forEach(card -> mediaCache.put(card, "file-id-" + card));
+        cachedManager = new MessagesManager(sender, mediaCache, OutboundRateLimiter.unlimited());
+
+        stateCodec = new TrickStateCodec("benchmark");
+        TrickState state = new TrickState(42, new byte[]{2});
+        stateCallbacks = new ArrayList<>();
+        for (int chosen = 1; chosen <= layout.getPiles(); chosen++) {
+            stateCallbacks.add(stateCodec.encode(CHAT_ID, layout, state.choose(chosen)));
+        }
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup createInlineKeyboard() {
+        return uploadingManager.createInlineKeyboard(layout.getPiles());
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup buildInlineKeyboard() {
+        return uploadingManager.buildInlineKeyboard(List.of("1", "2", "3"));
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup createStateKeyboard() {
+        TrickState state = new TrickState(42, new byte[]{2});
+        List<String> callbackData = new ArrayList<>(layout.getPiles());
+        for (int chosen = 1; chosen <= layout.getPiles(); chosen++) {
+            callbackData.add(stateCodec.encode(CHAT_ID, layout, state.choose(chosen)));
+        }
+        return uploadingManager.buildInlineKeyboard(callbackData);
+    }
+
+    @Benchmark
+    public Object decodeState() {
+        return stateCodec.decode(CHAT_ID, layout, stateCallbacks.get(1));
+    }
+
+    @Benchmark
+    public Object sendMediaGroupUpload() {
+        uploadingManager.sendMediaGroup(CHAT_ID, pile);
+        return sender.getLastRequest();
+    }
+
+    @Benchmark
+    public Object sendMediaGroupCached() {
+        cachedManager.sendMediaGroup(CHAT_ID, pile);
+        return sender.getLastRequest();
+    }
+
+}
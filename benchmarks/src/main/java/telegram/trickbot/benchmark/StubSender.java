@@ -0,0 +1,27 @@
+package telegram.trickbot.benchmark;
+
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import java.util.List;
+
+// Only SendMediaGroup can be overridden: the other send methods of DefaultAbsSender are final and go to HTTP.
+class StubSender extends DefaultAbsSender {
+    private Object lastRequest;
+
+    StubSender() {
+        super(new DefaultBotOptions(), "0:benchmark");
+    }
+
+    @Override
+    public List<Message> execute(SendMediaGroup sendMediaGroup) {
+        lastRequest = sendMediaGroup;
+        return List.of();
+    }
+
+    Object getLastRequest() {
+        return lastRequest;
+    }
+
+}
@@ -3,30 +3,36 @@ package telegram.trickbot.bot;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.api.objects.Update;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
-import telegram.trickbot.service.DeckManager;
-import telegram.trickbot.service.MessagesManager;
+import telegram.trickbot.cluster.ClusterRouter;
+import java.util.List;
 
 @Component
+@ConditionalOnProperty(name = "bot.mode", havingValue = "polling", matchIfMissing = true)
 @Slf4j
 public class Bot extends TelegramLongPollingBot {
-    private final DeckManager deckManager;
-    private final MessagesManager messageSender;
-    private int step = 0;
-    private long chatId;
-    private String userName;
+    private final TrickHandler trickHandler;
+    private final UpdateDispatcher updateDispatcher;
+    private final ClusterRouter clusterRouter;
 
     @Value("${bot.username}")
     private String botUsername;
 
+    public Bot(String botToken, TrickHandler trickHandler, UpdateDispatcher updateDispatcher) {
+        this(new DefaultBotOptions(), botToken, trickHandler, updateDispatcher, ClusterRouter.disabled());
+    }
+
     @Autowired
-    public Bot(@Value("${bot.token}") String botToken, DeckManager deckManager) {
-        super(botToken);
-        this.deckManager = deckManager;
-        this.messageSender = new MessagesManager(this);
+    public Bot(DefaultBotOptions botOptions, @Value("${bot.token}") String botToken, TrickHandler trickHandler,
+               UpdateDispatcher updateDispatcher, ClusterRouter clusterRouter) {
+        super(botOptions, botToken);
+        this.trickHandler = trickHandler;
+        this.updateDispatcher = updateDispatcher;
+        this.clusterRouter = clusterRouter;
     }
 
     @Override
@@ -35,84 +41,18 @@ public class Bot extends TelegramLongPollingBot {
     }
 
     @Override
-    public void onUpdateReceived(Update update) {
-        if (update.hasMessage() && update.getMessage().hasText()) {
-            long chatId = update.getMessage().getChatId();
-            userName = update.getMessage().getFrom().getFirstName();
-            log.info("chat ID: {}, user name: {}", chatId, userName);
-
-            if (update.getMessage().getText().equalsIgnoreCase("/start")) {
-                messageSender.sendWelcomeMessage(chatId, userName);
-            }
-        }
-        else if (update.hasCallbackQuery()) {
-            String callbackData = update.getCallbackQuery().getData();
-            long chatId = update.getCallbackQuery().getMessage().getChatId();
-            log.info("chat ID: {}, callback data: {}", chatId, callbackData);
-
-            if (callbackData.equals("start_trick")) {
-                startTrick(chatId);
+    public void onUpdatesReceived(List<Update> updates) {
+        updates.forEach(update -> {
+            if (!clusterRouter.route(update, trickHandler::handleShedUpdate)) {
+                updateDispatcher.dispatch(update, trickHandler::handleUpdate, trickHandler::handleShedUpdate,
+                        trickHandler::handleDuplicateUpdate);
             }
-            else {
-                handleButtonPress(callbackData);
-            }
-        }
-    }
-
-    public void startTrick(long chatId) {
-        this.chatId = chatId;
-        deckManager.shuffleDeck();
-        step = 0;
-        performTrick();
+        });
     }
 
-    public void performTrick() {
-        messageSender.sendTextMessage(chatId, "👇 СТОПКА 1 👇");
-        messageSender.sendMediaGroup(chatId, deckManager.getPile1());
-        sleep(500);
-
-        messageSender.sendTextMessage(chatId, "👇 СТОПКА 2 👇");
-        messageSender.sendMediaGroup(chatId, deckManager.getPile2());
-        sleep(500);
-
-        messageSender.sendTextMessage(chatId, "👇 СТОПКА 3 👇");
-        messageSender.sendMediaGroup(chatId, deckManager.getPile3());
-
-        InlineKeyboardMarkup keyboardMarkup = messageSender.createInlineKeyboard();
-        messageSender.sendMessageWithKeyboard(
-                chatId, "В какой стопке компания, которую вы загадали?", keyboardMarkup);
-    }
-
-    public void handleButtonPress(String data) {
-        int chosenPile = Integer.parseInt(data);
-        deckManager.updateDeck(chosenPile);
-        step++;
-        log.info("Chosen pile: {}, Step: {}", chosenPile, step);
-
-        if (step < 3) {
-            performTrick();
-        }
-        else {
-            showEleventhCard();
-            sleep(1000);
-            messageSender.sendWelcomeMessage(chatId, userName);
-        }
-    }
-
-    public void showEleventhCard() {
-        String cardToShow = deckManager.getSelectedCard();
-        log.info("Card to show: {}", cardToShow);
-        messageSender.sendPhoto(chatId, cardToShow,"Компания, которую вы загадали\uD83D\uDC46");
-    }
-
-    public void sleep(int delay) {
-        try {
-            Thread.sleep(delay);
-        }
-        catch (InterruptedException e) {
-            log.error("Error sleeping: {}", e.getMessage());
-            throw new RuntimeException(e);
-        }
+    @Override
+    public void onUpdateReceived(Update update) {
+        trickHandler.handleUpdate(update);
     }
 
-}
\ No newline at end of file
+}
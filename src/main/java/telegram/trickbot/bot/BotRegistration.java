@@ -0,0 +1,47 @@
+package telegram.trickbot.bot;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
+import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+import telegram.trickbot.metrics.StartupTimer;
+
+/**
+ * Starts long polling once the application is ready rather than while the context is being built, so the network
+ * round trips of registration do not hold up the rest of startup.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bot.mode", havingValue = "polling", matchIfMissing = true)
+public class BotRegistration {
+    private final Bot bot;
+    private final StartupTimer startupTimer;
+    private volatile BotSession session;
+
+    public BotRegistration(Bot bot, StartupTimer startupTimer) {
+        this.bot = bot;
+        this.startupTimer = startupTimer;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void register() throws TelegramApiException {
+        session = new TelegramBotsApi(DefaultBotSession.class).registerBot(bot);
+        log.info("Polling for updates as {}", bot.getBotUsername());
+        startupTimer.phase("bot_registered");
+    }
+
+    @PreDestroy
+    public void stop() {
+        BotSession current = session;
+        if (current != null && current.isRunning()) {
+            current.stop();
+        }
+    }
+
+}
@@ -0,0 +1,383 @@
+package telegram.trickbot.bot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import telegram.trickbot.logging.TrickEvents;
+import telegram.trickbot.metrics.BotMetrics;
+import telegram.trickbot.service.DeckCatalog;
+import telegram.trickbot.service.DeckLayout;
+import telegram.trickbot.service.DeckManager;
+import telegram.trickbot.service.MessagesManager;
+import telegram.trickbot.service.OutboundPipeline;
+import telegram.trickbot.service.OutboundRateLimiter;
+import telegram.trickbot.service.RoundComposer;
+import telegram.trickbot.session.SessionJournal;
+import telegram.trickbot.session.SessionManager;
+import telegram.trickbot.session.TrickSession;
+import telegram.trickbot.session.TrickState;
+import telegram.trickbot.session.TrickStateCodec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+@Slf4j
+public class TrickHandler {
+    private static final long PILE_DELAY = 500;
+    private static final long WELCOME_DELAY = 1000;
+    private static final String ROUND_SEPARATOR = ":";
+    public static final String START_TRICK = "start_trick";
+    private static final String DECK_COMMAND = "/deck";
+    private static final String BUSY_MESSAGE = "Сейчас слишком много желающих, попробуйте /start через минуту.";
+    private static final String RESTART_MESSAGE = "Фокус прервался, начните заново командой /start.";
+    private final DeckManager deckManager;
+    private final DeckCatalog deckCatalog;
+    private final SessionManager sessionManager;
+    private final SessionJournal journal;
+    private final OutboundPipeline outboundPipeline;
+    private final MessagesManager messageSender;
+    private final RoundComposer roundComposer;
+    private final TrickStateCodec stateCodec;
+    private final BotMetrics metrics;
+    private final TrickEvents events;
+    private final boolean stateless;
+
+    public TrickHandler(DeckManager deckManager, DeckCatalog deckCatalog, SessionManager sessionManager,
+                        SessionJournal journal, OutboundPipeline outboundPipeline, MessagesManager messageSender,
+                        RoundComposer roundComposer, TrickStateCodec stateCodec, BotMetrics metrics,
+                        TrickEvents events, @Value("${trick.stateless:false}") boolean stateless) {
+        this.deckManager = deckManager;
+        this.deckCatalog = deckCatalog;
+        this.sessionManager = sessionManager;
+        this.journal = journal;
+        this.outboundPipeline = outboundPipeline;
+        this.messageSender = messageSender;
+        this.roundComposer = roundComposer;
+        this.stateCodec = stateCodec;
+        this.metrics = metrics;
+        this.events = events;
+        this.stateless = stateless;
+    }
+
+    public void handleUpdate(Update update) {
+        if (update.hasMessage() && update.getMessage().hasText()) {
+            long chatId = update.getMessage().getChatId();
+            String userName = update.getMessage().getFrom().getFirstName();
+            events.message(chatId);
+            if (!stateless) {
+                sessionManager.getSession(chatId).setUserName(userName);
+            }
+
+            String text = update.getMessage().getText().trim();
+            if (text.equalsIgnoreCase("/start")) {
+                int rounds = deckManager.getLayout().getRounds();
+                outboundPipeline.sequence(chatId, OutboundPipeline.Priority.NEW_GAME)
+                        .send(() -> messageSender.sendWelcomeMessage(chatId, userName, rounds))
+                        .submit();
+            }
+            else if (text.equals(DECK_COMMAND) || text.startsWith(DECK_COMMAND + " ")) {
+                handleDeckCommand(chatId, text.substring(DECK_COMMAND.length()).trim());
+            }
+        }
+        else if (update.hasCallbackQuery()) {
+            String callbackData = update.getCallbackQuery().getData();
+            long chatId = update.getCallbackQuery().getMessage().getChatId();
+            events.callback(chatId, callbackData);
+            if (update.getCallbackQuery().getId() != null) {
+                messageSender.answerCallbackQuery(update.getCallbackQuery().getId());
+            }
+
+            User from = update.getCallbackQuery().getFrom();
+            String userName = from != null ? from.getFirstName() : null;
+
+            if (TrickStateCodec.isEncoded(callbackData)) {
+                handleEncodedButtonPress(chatId, userName, callbackData);
+                return;
+            }
+            if (userName != null && !stateless) {
+                sessionManager.getSession(chatId).setUserName(userName);
+            }
+
+            if (callbackData.equals(START_TRICK)) {
+                if (stateless) {
+                    startStatelessTrick(chatId);
+                }
+                else {
+                    startTrick(chatId);
+                }
+            }
+            else {
+                handleButtonPress(chatId, callbackData);
+            }
+        }
+    }
+
+    public void handleShedUpdate(Update update) {
+        if (update.hasMessage() && update.getMessage().hasText()
+                && update.getMessage().getText().trim().equalsIgnoreCase("/start")) {
+            reply(update.getMessage().getChatId(), BUSY_MESSAGE);
+        }
+        else if (update.hasCallbackQuery() && update.getCallbackQuery().getId() != null) {
+            String callbackQueryId = update.getCallbackQuery().getId();
+            Long chatId = UpdateDispatcher.chatIdOf(update);
+            // A button on an inline-mode message has no chat to order the answer against, so it is answered at once.
+            if (chatId == null) {
+                messageSender.answerCallbackQuery(callbackQueryId, BUSY_MESSAGE);
+                return;
+            }
+            outboundPipeline.sequence(chatId, OutboundPipeline.Priority.NEW_GAME)
+                    .send(() -> messageSender.answerCallbackQuery(callbackQueryId, BUSY_MESSAGE))
+                    .submit();
+        }
+    }
+
+    public void handleDuplicateUpdate(Update update) {
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getId() != null) {
+            messageSender.answerCallbackQuery(update.getCallbackQuery().getId());
+        }
+    }
+
+    public void handleDeckCommand(long chatId, String deckId) {
+        if (deckCatalog.getDecks().isEmpty()) {
+            reply(chatId, "Другие колоды пока не подключены.");
+            return;
+        }
+        if (deckId.isEmpty()) {
+            StringBuilder text = new StringBuilder("Доступные колоды:\n");
+            deckCatalog.getDecks().forEach(deck ->
+                    text.append("\n").append(deck.id()).append(" — ").append(deck.title()));
+            text.append("\n\nВыберите колоду командой ").append(DECK_COMMAND).append(" <название>");
+            reply(chatId, text.toString());
+            return;
+        }
+        if (stateless) {
+            reply(chatId, "Выбор колоды недоступен в этом режиме.");
+            return;
+        }
+
+        Optional<DeckCatalog.DeckInfo> deck = deckCatalog.findDeck(deckId);
+        if (deck.isEmpty()) {
+            reply(chatId, "Колода " + deckId + " не найдена.");
+            return;
+        }
+        TrickSession session = sessionManager.getSession(chatId);
+        synchronized (session) {
+            session.setDeckId(deckId);
+        }
+        log.info("Chat ID: {} selected deck {}", chatId, deckId);
+        reply(chatId, "Выбрана колода «" + deck.get().title() + "».");
+    }
+
+    private void reply(long chatId, String text) {
+        outboundPipeline.sequence(chatId, OutboundPipeline.Priority.NEW_GAME)
+                .send(() -> messageSender.sendTextMessage(chatId, text))
+                .submit();
+    }
+
+    public void startTrick(long chatId) {
+        TrickSession session = sessionManager.getSession(chatId);
+        synchronized (session) {
+            long seed = deckManager.nextSeed();
+            session.start(deckManager.newDeck(seed), seed);
+            events.shuffle(chatId, seed);
+            journal.recordShuffle(chatId, session.getDeckId(), session.getDeck());
+            performTrick(session, System.nanoTime());
+        }
+    }
+
+    public void startStatelessTrick(long chatId) {
+        long started = System.nanoTime();
+        TrickState state = new TrickState(deckManager.nextSeed(), new byte[0]);
+        events.shuffle(chatId, state.seed());
+        sendRound(chatId, deckManager.newDeck(state.seed()), deckManager.getCards(), createStateKeyboard(chatId, state),
+                0, started);
+    }
+
+    public void performTrick(TrickSession session) {
+        performTrick(session, System.nanoTime());
+    }
+
+    private void performTrick(TrickSession session, long started) {
+        int piles = deckManager.getLayout().getPiles();
+        List<String> callbackData = new ArrayList<>(piles);
+        for (int pile = 1; pile <= piles; pile++) {
+            callbackData.add(session.getStep() + ROUND_SEPARATOR + pile);
+        }
+        sendRound(session.getChatId(), session.getDeck(), cardsOf(session),
+                messageSender.createInlineKeyboard(callbackData), session.getStep(), started);
+    }
+
+    private List<String> cardsOf(TrickSession session) {
+        if (session.getDeckId() == null) {
+            return deckManager.getCards();
+        }
+        return deckCatalog.findDeck(session.getDeckId())
+                .map(DeckCatalog.DeckInfo::cards)
+                .orElseGet(deckManager::getCards);
+    }
+
+    private void sendRound(long chatId, byte[] deck, List<String> deckCards, InlineKeyboardMarkup keyboardMarkup,
+                           int round, long started) {
+        int piles = deckManager.getLayout().getPiles();
+
+        OutboundPipeline.Sequence sequence = outboundPipeline.sequence(chatId,
+                round == 0 ? OutboundPipeline.Priority.NEW_GAME : OutboundPipeline.Priority.ROUND);
+        AtomicBoolean failed = new AtomicBoolean();
+        for (int pile = 1; pile <= piles; pile++) {
+            int index = pile;
+            List<String> cards = deckManager.getPile(deck, pile, deckCards);
+            InlineKeyboardMarkup markup = pile == piles ? keyboardMarkup : null;
+            if (pile > 1 && !roundComposer.isEditing(round)) {
+                sequence.delay(PILE_DELAY);
+            }
+            sequence.send(() -> showPile(chatId, round, failed, () ->
+                    roundComposer.showPile(chatId, round, index, piles, cards, markup)));
+        }
+        sequence.send(() -> {
+            if (!failed.get()) {
+                metrics.recordStep(round, System.nanoTime() - started);
+            }
+        }).submit();
+    }
+
+    private void showPile(long chatId, int round, AtomicBoolean failed, Runnable show) {
+        if (failed.get()) {
+            return;
+        }
+        try {
+            show.run();
+        }
+        catch (OutboundRateLimiter.RateLimitedException e) {
+            failed.set(true);
+            log.error("Round {} for chat ID {} was not delivered, ending the trick: {}", round, chatId, e.getMessage());
+            abandonTrick(chatId, round);
+        }
+    }
+
+    // The chat still shows the previous round, so playing on would reveal the wrong card.
+    private void abandonTrick(long chatId, int round) {
+        if (!stateless) {
+            sessionManager.findSession(chatId).ifPresent(session -> {
+                synchronized (session) {
+                    if (session.isStarted() && session.getStep() == round) {
+                        session.finish();
+                        journal.recordFinish(chatId);
+                    }
+                }
+            });
+        }
+        roundComposer.clear(chatId);
+        reply(chatId, RESTART_MESSAGE);
+    }
+
+    private InlineKeyboardMarkup createStateKeyboard(long chatId, TrickState state) {
+        DeckLayout layout = deckManager.getLayout();
+        List<String> callbackData = new ArrayList<>(layout.getPiles());
+        for (int pile = 1; pile <= layout.getPiles(); pile++) {
+            callbackData.add(stateCodec.encode(chatId, layout, state.choose(pile)));
+        }
+        return messageSender.buildInlineKeyboard(callbackData);
+    }
+
+    public void handleButtonPress(long chatId, String data) {
+        long started = System.nanoTime();
+        TrickSession session = sessionManager.getSession(chatId);
+        synchronized (session) {
+            if (!session.isStarted()) {
+                log.warn("No trick in progress for chat ID: {}, ignoring callback data: {}", chatId, data);
+                reply(chatId, RESTART_MESSAGE);
+                return;
+            }
+
+            int separator = data.indexOf(ROUND_SEPARATOR);
+            int chosenPile;
+            try {
+                if (separator >= 0 && Integer.parseInt(data.substring(0, separator)) != session.getStep()) {
+                    log.info("Stale button press for chat ID: {}, expected round: {}, callback data: {}",
+                            chatId, session.getStep(), data);
+                    return;
+                }
+                chosenPile = Integer.parseInt(data.substring(separator + 1));
+            }
+            catch (NumberFormatException e) {
+                log.warn("Malformed callback data for chat ID: {}: {}", chatId, data);
+                return;
+            }
+            if (chosenPile < 1 || chosenPile > deckManager.getLayout().getPiles()) {
+                log.warn("Unknown pile for chat ID: {}: {}", chatId, data);
+                return;
+            }
+            deckManager.updateDeck(session.getDeck(), chosenPile);
+            int step = session.nextStep();
+            events.choice(chatId, step, chosenPile);
+            journal.recordChoice(chatId, chosenPile, step, session.getDeck());
+
+            if (step < deckManager.getLayout().getRounds()) {
+                performTrick(session, started);
+            }
+            else {
+                revealCard(chatId, session.getUserName(), session.getDeck(), cardsOf(session), step, started,
+                        session.getStartedAt());
+                session.finish();
+                journal.recordFinish(chatId);
+            }
+        }
+    }
+
+    public void handleEncodedButtonPress(long chatId, String userName, String data) {
+        long started = System.nanoTime();
+        DeckLayout layout = deckManager.getLayout();
+        Optional<TrickState> decoded = stateCodec.decode(chatId, layout, data);
+        if (decoded.isEmpty() || decoded.get().round() > layout.getRounds()) {
+            log.warn("Rejected trick state for chat ID: {}", chatId);
+            return;
+        }
+
+        TrickState state = decoded.get();
+        byte[] deck = deckManager.replayDeck(state.seed(), state.choices());
+        if (state.round() > 0) {
+            events.choice(chatId, state.round(), state.choices()[state.round() - 1]);
+        }
+
+        if (state.round() < layout.getRounds()) {
+            sendRound(chatId, deck, deckManager.getCards(), createStateKeyboard(chatId, state), state.round(), started);
+        }
+        else {
+            revealCard(chatId, userName, deck, deckManager.getCards(), state.round(), started, 0);
+        }
+    }
+
+    public void showEleventhCard(TrickSession session) {
+        long started = System.nanoTime();
+        revealCard(session.getChatId(), session.getUserName(), session.getDeck(), cardsOf(session), session.getStep(),
+                started, session.getStartedAt());
+    }
+
+    private void revealCard(long chatId, String userName, byte[] deck, List<String> deckCards, int round, long started,
+                            long trickStarted) {
+        int rounds = deckManager.getLayout().getRounds();
+        String cardToShow = deckManager.getSelectedCard(deck, deckCards);
+        events.reveal(chatId, round, deck[deckManager.getLayout().getSelectedCard()]);
+
+        outboundPipeline.sequence(chatId, OutboundPipeline.Priority.REVEAL)
+                .send(() -> roundComposer.clear(chatId))
+                .send(() -> messageSender.sendPhoto(chatId, cardToShow, "Компания, которую вы загадали\uD83D\uDC46"))
+                .send(() -> {
+                    long revealed = System.nanoTime();
+                    metrics.recordStep(round, revealed - started);
+                    if (trickStarted != 0) {
+                        metrics.recordTrick(revealed - trickStarted);
+                    }
+                })
+                .delay(WELCOME_DELAY)
+                .priority(OutboundPipeline.Priority.NEW_GAME)
+                .send(() -> messageSender.sendWelcomeMessage(chatId, userName, rounds))
+                .submit();
+    }
+
+}
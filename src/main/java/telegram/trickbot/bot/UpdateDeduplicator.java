@@ -0,0 +1,95 @@
+package telegram.trickbot.bot;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import telegram.trickbot.session.TrickStateCodec;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers recently seen update IDs, callback query IDs and pressed buttons for a bounded time window, so
+ * redelivered updates and double-taps on the same button are handled once. A button is a signed trick state, or
+ * the callback data of a given message.
+ */
+@Component
+public class UpdateDeduplicator {
+    private final ConcurrentMap<String, Long> seen = new ConcurrentHashMap<>();
+    private final Queue<Seen> order = new ConcurrentLinkedQueue<>();
+    private final LongAdder duplicates = new LongAdder();
+    private final long windowMillis;
+    private final int maxEntries;
+
+    public UpdateDeduplicator() {
+        this(Duration.ofMinutes(10), 100_000);
+    }
+
+    @Autowired
+    public UpdateDeduplicator(@Value("${dedup.window:PT10M}") Duration window,
+                              @Value("${dedup.max-entries:100000}") int maxEntries) {
+        this.windowMillis = window.toMillis();
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean firstSeen(Update update) {
+        long now = System.currentTimeMillis();
+        expire(now);
+
+        boolean first = update.getUpdateId() == null || remember("u:" + update.getUpdateId(), now);
+        if (update.hasCallbackQuery()) {
+            CallbackQuery callbackQuery = update.getCallbackQuery();
+            if (callbackQuery.getId() != null) {
+                first &= remember("c:" + callbackQuery.getId(), now);
+            }
+            if (callbackQuery.getData() != null && TrickStateCodec.isEncoded(callbackQuery.getData())) {
+                first &= remember("s:" + callbackQuery.getData(), now);
+            }
+            else if (callbackQuery.getMessage() != null && callbackQuery.getMessage().getMessageId() != null) {
+                first &= remember("m:" + callbackQuery.getMessage().getChatId() + ":"
+                        + callbackQuery.getMessage().getMessageId() + ":" + callbackQuery.getData(), now);
+            }
+        }
+
+        if (!first) {
+            duplicates.increment();
+        }
+        return first;
+    }
+
+    public int size() {
+        return seen.size();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    private boolean remember(String key, long now) {
+        if (seen.putIfAbsent(key, now) != null) {
+            return false;
+        }
+        order.add(new Seen(key, now));
+        return true;
+    }
+
+    private void expire(long now) {
+        long cutoff = now - windowMillis;
+        Seen oldest;
+        while ((oldest = order.peek()) != null && (oldest.at() < cutoff || seen.size() > maxEntries)) {
+            Seen removed = order.poll();
+            if (removed != null) {
+                seen.remove(removed.key(), removed.at());
+            }
+        }
+    }
+
+    private record Seen(String key, long at) {
+    }
+
+}
@@ -0,0 +1,214 @@
+package telegram.trickbot.bot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import telegram.trickbot.metrics.BotMetrics;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Hands updates to per-chat mailboxes. Once the updates waiting or being handled reach the high watermark, new
+ * messages and presses of the start button are shed until the backlog drains to the low watermark; button presses
+ * for games in progress are always admitted. Redelivered updates only reach the duplicate handler, which can still answer a callback.
+ */
+@Slf4j
+@Component
+public class UpdateDispatcher {
+    private final ConcurrentMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ExecutorService updateExecutor;
+    private final BotMetrics metrics;
+    private final UpdateDeduplicator deduplicator;
+    private final AtomicInteger queuedUpdates = new AtomicInteger();
+    private final AtomicBoolean shedding = new AtomicBoolean();
+    private final LongAdder shed = new LongAdder();
+    private final int highWatermark;
+    private final int lowWatermark;
+
+    public UpdateDispatcher(ExecutorService updateExecutor) {
+        this(updateExecutor, new BotMetrics(), new UpdateDeduplicator());
+    }
+
+    public UpdateDispatcher(ExecutorService updateExecutor, BotMetrics metrics, UpdateDeduplicator deduplicator) {
+        this(updateExecutor, metrics, deduplicator, 10_000, 8_000);
+    }
+
+    @Autowired
+    public UpdateDispatcher(@Qualifier("updateExecutor") ExecutorService updateExecutor, BotMetrics metrics,
+                            UpdateDeduplicator deduplicator,
+                            @Value("${intake.high-watermark:10000}") int highWatermark,
+                            @Value("${intake.low-watermark:8000}") int lowWatermark) {
+        if (lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("intake.low-watermark must not exceed intake.high-watermark");
+        }
+        this.updateExecutor = updateExecutor;
+        this.metrics = metrics;
+        this.deduplicator = deduplicator;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    public static Long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return null;
+    }
+
+    public void dispatch(Update update, Consumer<Update> handler) {
+        dispatch(update, handler, shedUpdate -> { });
+    }
+
+    public void dispatch(Update update, Consumer<Update> handler, Consumer<Update> shedHandler) {
+        dispatch(update, handler, shedHandler, duplicate -> { });
+    }
+
+    public void dispatch(Update update, Consumer<Update> handler, Consumer<Update> shedHandler,
+                         Consumer<Update> duplicateHandler) {
+        if (!deduplicator.firstSeen(update)) {
+            log.debug("Dropped duplicate update {}", update.getUpdateId());
+            updateExecutor.execute(() -> handle(update, duplicateHandler));
+            return;
+        }
+        if (!admit(update)) {
+            shed.increment();
+            log.debug("Shed update {} at intake depth {}", update.getUpdateId(), queuedUpdates.get());
+            handle(update, shedHandler);
+            return;
+        }
+
+        Long chatId = chatIdOf(update);
+        long received = System.nanoTime();
+        queuedUpdates.incrementAndGet();
+        Runnable task = () -> {
+            metrics.recordIntakeLag(System.nanoTime() - received);
+            try {
+                handle(update, handler);
+            }
+            finally {
+                queuedUpdates.decrementAndGet();
+            }
+        };
+
+        if (chatId == null) {
+            updateExecutor.execute(task);
+        }
+        else {
+            dispatch(chatId, task);
+        }
+    }
+
+    public void dispatch(long chatId, Runnable task) {
+        mailboxes.compute(chatId, (id, mailbox) -> {
+            Mailbox target = mailbox != null ? mailbox : new Mailbox(id);
+            target.tasks.add(task);
+            if (!target.running) {
+                target.running = true;
+                updateExecutor.execute(() -> drain(target));
+            }
+            return target;
+        });
+    }
+
+    public int activeMailboxes() {
+        return mailboxes.size();
+    }
+
+    public long getDuplicateCount() {
+        return deduplicator.getDuplicateCount();
+    }
+
+    public int getQueuedUpdates() {
+        return queuedUpdates.get();
+    }
+
+    public boolean isShedding() {
+        return shedding.get();
+    }
+
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    private boolean admit(Update update) {
+        int depth = queuedUpdates.get();
+        if (depth >= highWatermark && shedding.compareAndSet(false, true)) {
+            log.warn("Intake backlog reached {} updates, shedding new messages", depth);
+        }
+        else if (depth <= lowWatermark && shedding.compareAndSet(true, false)) {
+            log.info("Intake backlog drained to {} updates, admitting new messages", depth);
+        }
+        if (!shedding.get()) {
+            return true;
+        }
+        if (update.hasCallbackQuery()) {
+            return !TrickHandler.START_TRICK.equals(update.getCallbackQuery().getData());
+        }
+        return !update.hasMessage();
+    }
+
+    private void drain(Mailbox mailbox) {
+        while (true) {
+            Runnable task = mailbox.tasks.poll();
+            if (task != null) {
+                runSafely(mailbox.chatId, task);
+            }
+            else if (retire(mailbox)) {
+                return;
+            }
+        }
+    }
+
+    private boolean retire(Mailbox mailbox) {
+        Mailbox remaining = mailboxes.computeIfPresent(mailbox.chatId, (id, current) -> {
+            if (current.tasks.isEmpty()) {
+                current.running = false;
+                return null;
+            }
+            return current;
+        });
+        return remaining == null;
+    }
+
+    private void runSafely(long chatId, Runnable task) {
+        try {
+            task.run();
+        }
+        catch (RuntimeException e) {
+            log.error("Error handling task for chat ID {}: {}", chatId, e.getMessage());
+        }
+    }
+
+    private void handle(Update update, Consumer<Update> handler) {
+        try {
+            handler.accept(update);
+        }
+        catch (RuntimeException e) {
+            log.error("Error handling update {}: {}", update.getUpdateId(), e.getMessage());
+        }
+    }
+
+    private static class Mailbox {
+        private final long chatId;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private boolean running;
+
+        private Mailbox(long chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+}
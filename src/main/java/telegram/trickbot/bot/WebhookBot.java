@@ -0,0 +1,133 @@
+package telegram.trickbot.bot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import telegram.trickbot.cluster.ClusterRouter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Component
+@ConditionalOnProperty(name = "bot.mode", havingValue = "webhook")
+@Slf4j
+public class WebhookBot {
+    private static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TrickHandler trickHandler;
+    private final UpdateDispatcher updateDispatcher;
+    private final ClusterRouter clusterRouter;
+    private final AbsSender sender;
+    private final String host;
+    private final int port;
+    private final String path;
+    private final String url;
+    private final String secretToken;
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+
+    public WebhookBot(TrickHandler trickHandler,
+                      UpdateDispatcher updateDispatcher,
+                      ClusterRouter clusterRouter,
+                      @Qualifier("telegramSender") AbsSender sender,
+                      @Value("${webhook.host:0.0.0.0}") String host,
+                      @Value("${webhook.port:8080}") int port,
+                      @Value("${webhook.path:/webhook}") String path,
+                      @Value("${webhook.url:}") String url,
+                      @Value("${webhook.secret-token:}") String secretToken) {
+        this.trickHandler = trickHandler;
+        this.updateDispatcher = updateDispatcher;
+        this.clusterRouter = clusterRouter;
+        this.sender = sender;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+        this.url = url;
+        this.secretToken = secretToken;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext(path, this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+        log.info("Webhook server listening on {}:{}{}", host, getPort(), path);
+
+        if (!url.isBlank()) {
+            registerWebhook();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdown();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void registerWebhook() {
+        SetWebhook.SetWebhookBuilder setWebhook = SetWebhook.builder().url(url);
+        if (!secretToken.isBlank()) {
+            setWebhook.secretToken(secretToken);
+        }
+
+        try {
+            sender.execute(setWebhook.build());
+            log.info("Webhook registered: {}", url);
+        }
+        catch (TelegramApiException e) {
+            log.error("Error registering webhook: {}", e.getMessage());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!secretToken.isBlank() && !secretToken.equals(exchange.getRequestHeaders().getFirst(SECRET_TOKEN_HEADER))) {
+                log.warn("Rejected webhook request with invalid secret token");
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                update = objectMapper.readValue(body, Update.class);
+            }
+            catch (IOException e) {
+                log.error("Error parsing webhook update: {}", e.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, -1);
+            if (!clusterRouter.route(update, trickHandler::handleShedUpdate)) {
+                updateDispatcher.dispatch(update, trickHandler::handleUpdate, trickHandler::handleShedUpdate,
+                        trickHandler::handleDuplicateUpdate);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package telegram.trickbot.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Challenge-response handshake on a shared {@code cluster.secret}. The intake sends a random nonce, the worker
+ * answers with its node ID and an HMAC of the nonce and the ID, and the intake replies with a status byte. The
+ * secret itself never crosses the wire.
+ */
+final class ClusterHandshake {
+    static final int NONCE_BYTES = 16;
+    static final int PROOF_BYTES = 32;
+    static final int ACCEPTED = 0;
+    static final int REJECTED_SECRET = 1;
+    static final int REJECTED_DUPLICATE = 2;
+    static final int TIMEOUT_MILLIS = 5000;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final SecretKeySpec key;
+
+    ClusterHandshake(String secret) {
+        if (secret.isBlank()) {
+            throw new IllegalArgumentException("cluster.secret must be set in cluster mode");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    static byte[] nonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    static String describe(int status) {
+        return switch (status) {
+            case REJECTED_SECRET -> "wrong cluster.secret";
+            case REJECTED_DUPLICATE -> "a worker with the same node ID is connected";
+            default -> "status " + status;
+        };
+    }
+
+    byte[] proof(byte[] nonce, String nodeId) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            mac.update(nonce);
+            return mac.doFinal(nodeId.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    boolean verify(byte[] nonce, String nodeId, byte[] proof) {
+        return MessageDigest.isEqual(proof(nonce, nodeId), proof);
+    }
+
+}
@@ -0,0 +1,422 @@
+package telegram.trickbot.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import telegram.trickbot.bot.UpdateDispatcher;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Intake side of cluster mode. Workers dial in, prove they know {@code cluster.secret} and stay connected; each
+ * update is queued for the worker that owns its chat on a {@link HashRing} and written by that worker's own writer
+ * thread. A worker joins the ring when it connects and leaves when its connection drops or its writer stalls, so
+ * only that worker's chats move, together with the updates still queued for it. Sessions do not move, so cluster
+ * mode requires {@code trick.stateless=true}. Updates without a chat, or received while no worker is connected, are
+ * left to the local dispatcher.
+ */
+@Slf4j
+@Component
+public class ClusterRouter {
+    private static final long STALL_NANOS = 1_000_000_000L;
+    private final HashRing ring = new HashRing();
+    private final ConcurrentMap<String, Worker> workers = new ConcurrentHashMap<>();
+    private final LongAdder routed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder rebalances = new LongAdder();
+    private final boolean enabled;
+    private final String host;
+    private final int port;
+    private final String secret;
+    private final int queueCapacity;
+    private final long offerTimeoutNanos;
+    private final boolean stateless;
+    private ClusterHandshake handshake;
+    private ExecutorService connectionExecutor;
+    private ServerSocket serverSocket;
+
+    public ClusterRouter(boolean enabled, String host, int port, String secret) {
+        this(enabled, host, port, secret, 1024);
+    }
+
+    public ClusterRouter(boolean enabled, String host, int port, String secret, int queueCapacity) {
+        this(enabled, host, port, secret, queueCapacity, Duration.ofMillis(50), true);
+    }
+
+    @Autowired
+    public ClusterRouter(@Value("${cluster.intake:false}") boolean enabled,
+                         @Value("${cluster.host:127.0.0.1}") String host,
+                         @Value("${cluster.port:7070}") int port,
+                         @Value("${cluster.secret:}") String secret,
+                         @Value("${cluster.queue-capacity:1024}") int queueCapacity,
+                         @Value("${cluster.offer-timeout:PT0.05S}") Duration offerTimeout,
+                         @Value("${trick.stateless:false}") boolean stateless) {
+        this.enabled = enabled;
+        this.host = host;
+        this.port = port;
+        this.secret = secret;
+        this.queueCapacity = queueCapacity;
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.stateless = stateless;
+    }
+
+    public static ClusterRouter disabled() {
+        return new ClusterRouter(false, "127.0.0.1", 0, "");
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (!stateless) {
+            throw new IllegalArgumentException("Cluster mode needs trick.stateless=true: sessions do not move with their chats");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("cluster.queue-capacity must be positive: " + queueCapacity);
+        }
+        handshake = new ClusterHandshake(secret);
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
+        connectionExecutor = Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name("cluster-intake-", 1).daemon().factory());
+        connectionExecutor.execute(this::acceptWorkers);
+        log.info("Cluster intake listening on {}:{}", host, getPort());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+        }
+        catch (IOException e) {
+            log.error("Error closing cluster intake: {}", e.getMessage());
+        }
+        workers.values().forEach(Worker::close);
+        connectionExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getWorkerCount() {
+        return ring.size();
+    }
+
+    public String ownerOf(long chatId) {
+        return ring.ownerOf(chatId);
+    }
+
+    public long getRoutedCount() {
+        return routed.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    public long getRebalanceCount() {
+        return rebalances.sum();
+    }
+
+    /**
+     * Forwards the update to the worker that owns its chat, or hands it to {@code shedHandler} when that worker's queue
+     * stays full for {@code cluster.offer-timeout}. Returns {@code false} when the update is left to the local
+     * dispatcher: it has no chat, cluster mode is off or no worker is connected.
+     */
+    public boolean route(Update update, Consumer<Update> shedHandler) {
+        Long chatId = enabled ? UpdateDispatcher.chatIdOf(update) : null;
+        if (chatId == null) {
+            return false;
+        }
+
+        byte[] frame;
+        try {
+            frame = UpdateFrames.encode(update);
+        }
+        catch (IOException e) {
+            log.error("Error encoding update {}: {}", update.getUpdateId(), e.getMessage());
+            return false;
+        }
+
+        return switch (forward(new Frame(chatId, frame))) {
+            case QUEUED -> {
+                routed.increment();
+                yield true;
+            }
+            case BUSY -> {
+                shed.increment();
+                shedHandler.accept(update);
+                yield true;
+            }
+            case NO_WORKER -> false;
+        };
+    }
+
+    // An owned chat is never handled locally: a busy worker sheds the update and only a stuck one loses its chats.
+    private Delivery forward(Frame frame) {
+        String owner;
+        while ((owner = ring.ownerOf(frame.chatId())) != null) {
+            Worker worker = workers.get(owner);
+            if (worker == null) {
+                ring.remove(owner);
+            }
+            else if (worker.offer(frame, offerTimeoutNanos)) {
+                return Delivery.QUEUED;
+            }
+            else if (worker.isClosed()) {
+                leave(worker);
+            }
+            else if (worker.isStalled()) {
+                log.warn("Worker {} has not taken an update for {} ms, removing it", owner, STALL_NANOS / 1_000_000);
+                leave(worker);
+            }
+            else {
+                log.debug("Worker {} has {} updates queued, shedding an update for chat ID {}", owner, queueCapacity,
+                        frame.chatId());
+                return Delivery.BUSY;
+            }
+        }
+        return Delivery.NO_WORKER;
+    }
+
+    private void acceptWorkers() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionExecutor.execute(() -> serve(socket));
+            }
+            catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.error("Error accepting cluster worker: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Worker worker = null;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(ClusterHandshake.TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            byte[] nonce = ClusterHandshake.nonce();
+            out.write(nonce);
+            out.flush();
+            String nodeId = in.readUTF();
+            byte[] proof = new byte[ClusterHandshake.PROOF_BYTES];
+            in.readFully(proof);
+            if (!handshake.verify(nonce, nodeId, proof)) {
+                reject(out, ClusterHandshake.REJECTED_SECRET, nodeId, socket);
+                return;
+            }
+
+            Worker candidate = new Worker(nodeId, socket, out);
+            if (workers.putIfAbsent(nodeId, candidate) != null) {
+                reject(out, ClusterHandshake.REJECTED_DUPLICATE, nodeId, socket);
+                return;
+            }
+            worker = candidate;
+            out.writeByte(ClusterHandshake.ACCEPTED);
+            out.flush();
+            socket.setSoTimeout(0);
+            join(worker);
+            connectionExecutor.execute(worker::writeFrames);
+            // Workers send nothing after the handshake, so the read only returns when the connection drops.
+            while (in.read() >= 0) {
+                // ignore
+            }
+        }
+        catch (IOException e) {
+            log.debug("Cluster worker connection closed: {}", e.getMessage());
+        }
+        finally {
+            if (worker != null) {
+                leave(worker);
+            }
+        }
+    }
+
+    private void reject(DataOutputStream out, int status, String nodeId, Socket socket) throws IOException {
+        log.warn("Rejected worker {} from {}: {}", nodeId, socket.getRemoteSocketAddress(),
+                ClusterHandshake.describe(status));
+        out.writeByte(status);
+        out.flush();
+    }
+
+    private void join(Worker worker) {
+        if (ring.add(worker.nodeId)) {
+            rebalances.increment();
+            log.info("Worker {} joined from {}, {} workers in the ring", worker.nodeId,
+                    worker.socket.getRemoteSocketAddress(), ring.size());
+        }
+    }
+
+    // The ring entry is removed before the map entry, so a worker reconnecting under the same ID is never unlinked.
+    private void leave(Worker worker) {
+        worker.close();
+        if (workers.get(worker.nodeId) == worker && ring.remove(worker.nodeId)) {
+            rebalances.increment();
+            log.warn("Worker {} left, {} workers in the ring", worker.nodeId, ring.size());
+        }
+        workers.remove(worker.nodeId, worker);
+    }
+
+    private void forwardOrDrop(Frame frame) {
+        if (forward(frame) != Delivery.QUEUED) {
+            dropped.increment();
+            log.warn("Dropped an update for chat ID {}: no worker could take it", frame.chatId());
+        }
+    }
+
+    private enum Delivery {
+        QUEUED, BUSY, NO_WORKER
+    }
+
+    private record Frame(long chatId, byte[] bytes) {
+    }
+
+    private final class Worker {
+        private final String nodeId;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final BlockingQueue<Frame> outbox;
+        private volatile boolean closed;
+        private volatile Thread writer;
+        private volatile long progressAt = System.nanoTime();
+
+        private Worker(String nodeId, Socket socket, DataOutputStream out) {
+            this.nodeId = nodeId;
+            this.socket = socket;
+            this.out = out;
+            this.outbox = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        // An idle writer is not stalled, so the clock restarts when a frame lands in an empty queue. A frame queued
+        // while the worker was closing may have missed the final drain, so it is taken back for the caller to re-route.
+        boolean offer(Frame frame, long timeoutNanos) {
+            if (closed) {
+                return false;
+            }
+            if (outbox.isEmpty()) {
+                progressAt = System.nanoTime();
+            }
+            try {
+                return outbox.offer(frame, timeoutNanos, TimeUnit.NANOSECONDS) && !(closed && outbox.remove(frame));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        boolean isStalled() {
+            return System.nanoTime() - progressAt > STALL_NANOS;
+        }
+
+        /**
+         * Writes queued frames back to back and flushes once the queue runs dry, so a burst costs one flush. When the
+         * worker leaves, the frame being written and everything still queued go to the chats' new owners.
+         */
+        void writeFrames() {
+            writer = Thread.currentThread();
+            Frame frame = null;
+            try {
+                while (!isClosed()) {
+                    frame = outbox.take();
+                    progressAt = System.nanoTime();
+                    UpdateFrames.append(out, frame.bytes());
+                    while ((frame = outbox.poll()) != null) {
+                        progressAt = System.nanoTime();
+                        UpdateFrames.append(out, frame.bytes());
+                    }
+                    out.flush();
+                }
+            }
+            catch (InterruptedException e) {
+                log.debug("Writer for worker {} stopped", nodeId);
+            }
+            catch (IOException e) {
+                if (!isClosed()) {
+                    log.warn("Error forwarding updates to worker {}: {}", nodeId, e.getMessage());
+                }
+            }
+            finally {
+                leave(this);
+                // close() interrupts the writer to end it; the flag is cleared so the handover can still wait for
+                // room in the new owners' queues.
+                Thread.interrupted();
+                if (!serverSocket.isClosed()) {
+                    requeue(frame);
+                }
+            }
+        }
+
+        private void requeue(Frame unsent) {
+            List<Frame> orphaned = new ArrayList<>();
+            if (unsent != null) {
+                orphaned.add(unsent);
+            }
+            outbox.drainTo(orphaned);
+            orphaned.forEach(ClusterRouter.this::forwardOrDrop);
+        }
+
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                log.debug("Error closing worker {} connection: {}", nodeId, e.getMessage());
+            }
+            Thread current = writer;
+            if (current != null && current != Thread.currentThread()) {
+                current.interrupt();
+            }
+        }
+    }
+
+}
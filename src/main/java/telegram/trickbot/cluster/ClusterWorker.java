@@ -0,0 +1,179 @@
+package telegram.trickbot.cluster;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import telegram.trickbot.bot.TrickHandler;
+import telegram.trickbot.bot.UpdateDispatcher;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Worker side of cluster mode: keeps a connection to the intake node, handles the updates forwarded to it and
+ * reconnects when the connection drops. Each worker needs its own {@code cluster.node-id} and the intake's
+ * {@code cluster.secret}. Replies go straight to the Bot API from the worker.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "bot.mode", havingValue = "worker")
+public class ClusterWorker {
+    private final InetSocketAddress intake;
+    private final String nodeId;
+    private final ClusterHandshake handshake;
+    private final long reconnectMillis;
+    private final Consumer<Update> handler;
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile Socket socket;
+    private Thread thread;
+
+    @Autowired
+    public ClusterWorker(TrickHandler trickHandler, UpdateDispatcher updateDispatcher,
+                         @Value("${cluster.intake-host:127.0.0.1}") String intakeHost,
+                         @Value("${cluster.port:7070}") int intakePort,
+                         @Value("${cluster.node-id:}") String nodeId,
+                         @Value("${cluster.secret:}") String secret,
+                         @Value("${cluster.reconnect-interval:PT1S}") Duration reconnectInterval,
+                         @Value("${trick.stateless:false}") boolean stateless) {
+        this(new InetSocketAddress(intakeHost, intakePort), nodeId, secret, reconnectInterval,
+                dispatchTo(trickHandler, updateDispatcher, stateless));
+    }
+
+    public ClusterWorker(InetSocketAddress intake, String nodeId, String secret, Duration reconnectInterval,
+                         Consumer<Update> handler) {
+        if (nodeId.isBlank()) {
+            throw new IllegalArgumentException("cluster.node-id must be set on workers and differ between them");
+        }
+        this.intake = intake;
+        this.nodeId = nodeId;
+        this.handshake = new ClusterHandshake(secret);
+        this.reconnectMillis = reconnectInterval.toMillis();
+        this.handler = handler;
+    }
+
+    private static Consumer<Update> dispatchTo(TrickHandler trickHandler, UpdateDispatcher updateDispatcher,
+                                               boolean stateless) {
+        if (!stateless) {
+            throw new IllegalArgumentException("Cluster mode needs trick.stateless=true: sessions do not move with their chats");
+        }
+        return update -> updateDispatcher.dispatch(update, trickHandler::handleUpdate, trickHandler::handleShedUpdate,
+                trickHandler::handleDuplicateUpdate);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        thread = Thread.ofPlatform().name("cluster-worker").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        closeSocket();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    private void run() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                connection.connect(intake);
+                connection.setTcpNoDelay(true);
+                socket = connection;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+                if (authenticate(in, out)) {
+                    connected = true;
+                    log.info("Worker {} connected to cluster intake {}", nodeId, intake);
+                    while (running) {
+                        handle(UpdateFrames.read(in));
+                    }
+                }
+            }
+            catch (EOFException e) {
+                log.warn("Cluster intake {} closed the connection", intake);
+            }
+            catch (IOException e) {
+                if (running) {
+                    log.warn("Cluster intake {} unavailable: {}", intake, e.getMessage());
+                }
+            }
+            finally {
+                connected = false;
+                socket = null;
+            }
+            pause();
+        }
+    }
+
+    private boolean authenticate(DataInputStream in, DataOutputStream out) throws IOException {
+        byte[] nonce = new byte[ClusterHandshake.NONCE_BYTES];
+        in.readFully(nonce);
+        out.writeUTF(nodeId);
+        out.write(handshake.proof(nonce, nodeId));
+        out.flush();
+        int status = in.readUnsignedByte();
+        if (status != ClusterHandshake.ACCEPTED) {
+            log.error("Cluster intake {} rejected worker {}: {}", intake, nodeId, ClusterHandshake.describe(status));
+            return false;
+        }
+        return true;
+    }
+
+    private void handle(Update update) {
+        try {
+            handler.accept(update);
+        }
+        catch (RuntimeException e) {
+            log.error("Error handling forwarded update {}: {}", update.getUpdateId(), e.getMessage());
+        }
+    }
+
+    private void pause() {
+        if (!running) {
+            return;
+        }
+        try {
+            Thread.sleep(reconnectMillis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void closeSocket() {
+        Socket current = socket;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.close();
+        }
+        catch (IOException e) {
+            log.debug("Error closing cluster connection: {}", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package telegram.trickbot.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring of worker node IDs. Each node is placed at many virtual points, so chats spread evenly and
+ * only the chats of a joining or leaving node change owner.
+ */
+public class HashRing {
+    private static final int VIRTUAL_NODES = 128;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes = new TreeSet<>();
+
+    public synchronized boolean add(String node) {
+        if (!nodes.add(node)) {
+            return false;
+        }
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+            ring.put(hash(node + "#" + i), node);
+        }
+        return true;
+    }
+
+    public synchronized boolean remove(String node) {
+        if (!nodes.remove(node)) {
+            return false;
+        }
+        ring.values().removeIf(node::equals);
+        return true;
+    }
+
+    public synchronized String ownerOf(long chatId) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> owner = ring.ceilingEntry(mix(chatId));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    public synchronized Set<String> getNodes() {
+        return Set.copyOf(nodes);
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+}
@@ -0,0 +1,42 @@
+package telegram.trickbot.cluster;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Length-prefixed JSON frames of updates, the same JSON Telegram posts to the webhook.
+ */
+final class UpdateFrames {
+    private static final int MAX_FRAME_BYTES = 1 << 20;
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private UpdateFrames() {
+    }
+
+    static byte[] encode(Update update) throws IOException {
+        return MAPPER.writeValueAsBytes(update);
+    }
+
+    static void append(DataOutputStream out, byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+    }
+
+    static Update read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid update frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return MAPPER.readValue(frame, Update.class);
+    }
+
+}
@@ -0,0 +1,40 @@
+package telegram.trickbot.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Slf4j
+@Configuration
+public class DispatchConfig {
+
+    @Value("${dispatch.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    @Value("${dispatch.platform-threads:16}")
+    private int platformThreads;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService updateExecutor() {
+        return createExecutor("update-handler-");
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService sendExecutor() {
+        return createExecutor("outbound-sender-");
+    }
+
+    private ExecutorService createExecutor(String namePrefix) {
+        if (virtualThreads) {
+            log.info("Using virtual threads for {}", namePrefix);
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+        }
+
+        log.info("Using {} platform threads for {}", platformThreads, namePrefix);
+        return Executors.newFixedThreadPool(platformThreads, Thread.ofPlatform().name(namePrefix, 1).daemon().factory());
+    }
+
+}
@@ -1,21 +1,56 @@
 package telegram.trickbot.config;
 
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.telegram.telegrambots.meta.TelegramBotsApi;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
-import telegram.trickbot.bot.Bot;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import java.lang.reflect.Field;
 
 @Configuration
 public class TelegramConfig {
 
     @Bean
-    public TelegramBotsApi telegramBotsApi(Bot bot) throws TelegramApiException {
-        var api = new TelegramBotsApi(DefaultBotSession.class);
-        api.registerBot(bot);
+    public DefaultBotOptions botOptions(@Value("${bot.api-url:}") String apiUrl) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        if (!apiUrl.isBlank()) {
+            options.setBaseUrl(apiUrl);
+        }
+        return options;
+    }
+
+    @Bean
+    public DefaultAbsSender telegramSender(DefaultBotOptions botOptions, @Value("${bot.token}") String botToken,
+                                           @Value("${outbound.max-in-flight:32}") int maxInFlight,
+                                           @Value("${telegram.callback-connections:8}") int callbackConnections) {
+        DefaultAbsSender sender = new DefaultAbsSender(botOptions, botToken) { };
+        resizeConnectionPool(sender, maxInFlight + callbackConnections);
+        return sender;
+    }
+
+    /**
+     * DefaultAbsSender builds its HTTP client with a pool of two connections per route and offers no option to
+     * change it, so the pool is resized in place to fit everything the bot may send at once.
+     */
+    static void resizeConnectionPool(DefaultAbsSender sender, int connections) {
+        PoolingHttpClientConnectionManager pool = connectionPool(sender);
+        pool.setMaxTotal(connections);
+        pool.setDefaultMaxPerRoute(connections);
+    }
 
-        return api;
+    static PoolingHttpClientConnectionManager connectionPool(DefaultAbsSender sender) {
+        try {
+            Field clientField = DefaultAbsSender.class.getDeclaredField("httpClient");
+            clientField.setAccessible(true);
+            Object client = clientField.get(sender);
+            Field managerField = client.getClass().getDeclaredField("connManager");
+            managerField.setAccessible(true);
+            return (PoolingHttpClientConnectionManager) managerField.get(client);
+        }
+        catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Cannot reach the Telegram sender connection pool", e);
+        }
     }
 
 }
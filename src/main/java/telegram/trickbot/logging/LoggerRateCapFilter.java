@@ -0,0 +1,63 @@
+package telegram.trickbot.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps INFO and lower events of the bot's own loggers at {@code maxPerSecond} per logger. The decision is made before
+ * the message is formatted, so dropped events cost one counter increment. Warnings, errors, other libraries' loggers
+ * and events below the logger's level pass untouched and are not counted against the cap.
+ */
+public class LoggerRateCapFilter extends TurboFilter {
+    private static final LongAdder DROPPED = new LongAdder();
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+    private int maxPerSecond = 200;
+    private String loggerPrefix = "telegram.trickbot";
+
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    public void setMaxPerSecond(int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    public void setLoggerPrefix(String loggerPrefix) {
+        this.loggerPrefix = loggerPrefix;
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (format == null || maxPerSecond <= 0 || level.isGreaterOrEqual(Level.WARN)
+                || !logger.getName().startsWith(loggerPrefix) || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+
+        Window window = windows.computeIfAbsent(logger.getName(), name -> new Window());
+        if (window.admit(System.currentTimeMillis() / 1000, maxPerSecond)) {
+            return FilterReply.NEUTRAL;
+        }
+        DROPPED.increment();
+        return FilterReply.DENY;
+    }
+
+    private static final class Window {
+        private long second;
+        private int count;
+
+        private synchronized boolean admit(long now, int limit) {
+            if (now != second) {
+                second = now;
+                count = 0;
+            }
+            return ++count <= limit;
+        }
+    }
+
+}
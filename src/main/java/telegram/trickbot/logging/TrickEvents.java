@@ -0,0 +1,76 @@
+package telegram.trickbot.logging;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compact per-step trick events as {@code key=value} lines on the {@code telegram.trickbot.events} logger. Cards
+ * are logged by index and callback data by hash. Only one chat in {@code logging.events.sample-one-in} is traced, chosen by chat ID, so a
+ * sampled chat is followed through the whole trick.
+ */
+@Slf4j(topic = "telegram.trickbot.events")
+@Component
+public class TrickEvents {
+    private final int sampleOneIn;
+
+    public TrickEvents() {
+        this(1);
+    }
+
+    @Autowired
+    public TrickEvents(@Value("${logging.events.sample-one-in:1}") int sampleOneIn) {
+        this.sampleOneIn = Math.max(1, sampleOneIn);
+    }
+
+    public boolean isTraced(long chatId) {
+        return log.isInfoEnabled() && isSampled(chatId);
+    }
+
+    public boolean isSampled(long chatId) {
+        return sampleOneIn == 1 || Math.floorMod(mix(chatId), sampleOneIn) == 0;
+    }
+
+    public void message(long chatId) {
+        if (isTraced(chatId)) {
+            log.info("event=message chat={}", chatId);
+        }
+    }
+
+    public void callback(long chatId, String data) {
+        if (isTraced(chatId)) {
+            log.info("event=callback chat={} data_hash={}", chatId, dataHash(data));
+        }
+    }
+
+    public void shuffle(long chatId, long seed) {
+        if (isTraced(chatId)) {
+            log.info("event=shuffle chat={} seed={}", chatId, seed);
+        }
+    }
+
+    public void choice(long chatId, int round, int pile) {
+        if (isTraced(chatId)) {
+            log.info("event=choice chat={} round={} pile={}", chatId, round, pile);
+        }
+    }
+
+    public void reveal(long chatId, int round, int card) {
+        if (isTraced(chatId)) {
+            log.info("event=reveal chat={} round={} card={}", chatId, round, card);
+        }
+    }
+
+    // In stateless mode the callback data is a signed trick state that replays the game, so only a hash of it is
+    // logged; equal hashes still show repeated presses of the same button.
+    static String dataHash(String data) {
+        return data != null ? String.format("%08x", data.hashCode()) : "-";
+    }
+
+    private static long mix(long chatId) {
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+}
@@ -0,0 +1,171 @@
+package telegram.trickbot.metrics;
+
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import telegram.trickbot.service.OutboundRateLimiter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+@Component
+public class BotMetrics {
+    static final String TELEGRAM_CALLS = "trickbot_telegram_call_seconds";
+    static final String TELEGRAM_ERRORS = "trickbot_telegram_errors_total";
+    static final String TRICK_STEPS = "trickbot_trick_step_seconds";
+    static final String TRICKS = "trickbot_trick_seconds";
+    static final String INTAKE_LAG = "trickbot_update_intake_lag_seconds";
+    static final String OUTBOUND_WAIT = "trickbot_outbound_wait_seconds";
+    static final String STARTUP = "trickbot_startup_seconds";
+    private final ConcurrentMap<String, Family<LatencyHistogram>> histograms = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Family<LongAdder>> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Double> startupPhases = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean firstUpdateSeen = new AtomicBoolean();
+    private volatile Runnable firstUpdateListener = () -> { };
+
+    public BotMetrics() {
+        histogramFamily(TELEGRAM_CALLS, "Duration of Telegram Bot API calls by method");
+        counterFamily(TELEGRAM_ERRORS, "Failed Telegram Bot API calls by method and error code");
+        histogramFamily(TRICK_STEPS, "Time from a pile choice until the next round is sent");
+        histogramFamily(TRICKS, "Time from starting a trick until the card is revealed");
+        histogramFamily(INTAKE_LAG, "Time an update waits in its chat mailbox before handling");
+        histogramFamily(OUTBOUND_WAIT, "Time a ready outbound step waits for a send slot by priority class");
+    }
+
+    public <T> T timeCall(String method, OutboundRateLimiter.TelegramCall<T> call) throws TelegramApiException {
+        long started = System.nanoTime();
+        try {
+            return call.execute();
+        }
+        catch (TelegramApiException e) {
+            String code = e instanceof TelegramApiRequestException requestException && requestException.getErrorCode() != null
+                    ? String.valueOf(requestException.getErrorCode())
+                    : "none";
+            counter(TELEGRAM_ERRORS, "method=\"" + method + "\",code=\"" + code + "\"").increment();
+            throw e;
+        }
+        finally {
+            histogram(TELEGRAM_CALLS, "method=\"" + method + "\"").record(System.nanoTime() - started);
+        }
+    }
+
+    public void recordStep(int round, long nanos) {
+        histogram(TRICK_STEPS, "round=\"" + round + "\"").record(nanos);
+    }
+
+    public void recordTrick(long nanos) {
+        histogram(TRICKS, "").record(nanos);
+    }
+
+    public void recordIntakeLag(long nanos) {
+        histogram(INTAKE_LAG, "").record(nanos);
+        if (!firstUpdateSeen.get() && firstUpdateSeen.compareAndSet(false, true)) {
+            firstUpdateListener.run();
+        }
+    }
+
+    public void onFirstUpdate(Runnable listener) {
+        firstUpdateListener = listener;
+    }
+
+    public void recordStartupPhase(String phase, long millis) {
+        startupPhases.putIfAbsent(phase, millis / 1000.0);
+    }
+
+    public void recordOutboundWait(String priority, long nanos) {
+        histogram(OUTBOUND_WAIT, "priority=\"" + priority + "\"").record(nanos);
+    }
+
+    public void gauge(String name, String help, Supplier<? extends Number> value) {
+        gauges.put(name, new Gauge(help, "gauge", value));
+    }
+
+    public void counter(String name, String help, Supplier<? extends Number> value) {
+        gauges.put(name, new Gauge(help, "counter", value));
+    }
+
+    LatencyHistogram histogram(String name, String labels) {
+        return histograms.get(name).series.computeIfAbsent(labels, key -> new LatencyHistogram());
+    }
+
+    long getCount(String name, String labels) {
+        Family<LongAdder> family = counters.get(name);
+        LongAdder counter = family != null ? family.series.get(labels) : null;
+        return counter != null ? counter.sum() : 0;
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        histograms.forEach((name, family) -> {
+            header(out, name, family.help, "histogram");
+            family.series.forEach((labels, histogram) -> {
+                long[] cumulative = histogram.cumulativeCounts();
+                for (int i = 0; i < cumulative.length; i++) {
+                    sample(out, name + "_bucket", withLabel(labels, "le=\"" + LatencyHistogram.BUCKETS[i] + "\""), cumulative[i]);
+                }
+                sample(out, name + "_bucket", withLabel(labels, "le=\"+Inf\""), histogram.getCount());
+                sample(out, name + "_sum", labels, histogram.getSumSeconds());
+                sample(out, name + "_count", labels, histogram.getCount());
+            });
+        });
+        counters.forEach((name, family) -> {
+            header(out, name, family.help, "counter");
+            family.series.forEach((labels, counter) -> sample(out, name, labels, counter.sum()));
+        });
+        gauges.forEach((name, gauge) -> {
+            header(out, name, gauge.help, gauge.type);
+            sample(out, name, "", gauge.value.get());
+        });
+        if (!startupPhases.isEmpty()) {
+            header(out, STARTUP, "JVM uptime when each startup phase completed", "gauge");
+            startupPhases.forEach((phase, seconds) -> sample(out, STARTUP, "phase=\"" + phase + "\"", seconds));
+        }
+        return out.toString();
+    }
+
+    private LongAdder counter(String name, String labels) {
+        return counters.get(name).series.computeIfAbsent(labels, key -> new LongAdder());
+    }
+
+    private void histogramFamily(String name, String help) {
+        histograms.put(name, new Family<>(help));
+    }
+
+    private void counterFamily(String name, String help) {
+        counters.put(name, new Family<>(help));
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Number value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String withLabel(String labels, String label) {
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+
+    private static final class Family<T> {
+        private final String help;
+        private final Map<String, T> series = new ConcurrentSkipListMap<>();
+
+        private Family(String help) {
+            this.help = help;
+        }
+    }
+
+    private record Gauge(String help, String type, Supplier<? extends Number> value) {
+    }
+
+}
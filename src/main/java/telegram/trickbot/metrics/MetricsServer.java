@@ -0,0 +1,118 @@
+package telegram.trickbot.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import telegram.trickbot.bot.UpdateDispatcher;
+import telegram.trickbot.cluster.ClusterRouter;
+import telegram.trickbot.logging.LoggerRateCapFilter;
+import telegram.trickbot.service.DeckCatalog;
+import telegram.trickbot.service.OutboundPipeline;
+import telegram.trickbot.service.OutboundRateLimiter;
+import telegram.trickbot.service.PileRenderer;
+import telegram.trickbot.service.RequestTemplateCache;
+import telegram.trickbot.session.SessionJournal;
+import telegram.trickbot.session.SessionManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+@Component
+@ConditionalOnProperty(name = "metrics.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class MetricsServer {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final BotMetrics metrics;
+    private final String host;
+    private final int port;
+    private final String path;
+    private HttpServer server;
+
+    public MetricsServer(BotMetrics metrics,
+                         SessionManager sessionManager,
+                         SessionJournal journal,
+                         UpdateDispatcher updateDispatcher,
+                         OutboundPipeline outboundPipeline,
+                         OutboundRateLimiter rateLimiter,
+                         PileRenderer pileRenderer,
+                         RequestTemplateCache templateCache,
+                         DeckCatalog deckCatalog,
+                         ClusterRouter clusterRouter,
+                         @Value("${metrics.host:127.0.0.1}") String host,
+                         @Value("${metrics.port:9464}") int port,
+                         @Value("${metrics.path:/metrics}") String path) {
+        this.metrics = metrics;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+
+        metrics.gauge("trickbot_sessions_active", "Trick sessions held in memory", sessionManager::size);
+        metrics.counter("trickbot_journal_failures_total", "Session journal writes and compactions that failed", journal::getFailureCount);
+        metrics.gauge("trickbot_mailboxes_active", "Chats with queued updates", updateDispatcher::activeMailboxes);
+        metrics.gauge("trickbot_intake_queued_updates", "Admitted updates waiting or being handled", updateDispatcher::getQueuedUpdates);
+        metrics.gauge("trickbot_intake_shedding", "1 while new messages are shed at intake", () -> updateDispatcher.isShedding() ? 1 : 0);
+        metrics.counter("trickbot_intake_shed_total", "Updates shed at intake while overloaded", updateDispatcher::getShedCount);
+        metrics.counter("trickbot_duplicate_updates_total", "Redelivered updates and repeated button presses dropped", updateDispatcher::getDuplicateCount);
+        metrics.gauge("trickbot_outbound_pending_steps", "Outbound steps waiting to be sent", outboundPipeline::getPendingSteps);
+        metrics.gauge("trickbot_outbound_queued_steps", "Ready outbound steps waiting for a send slot", outboundPipeline::getQueuedSteps);
+        metrics.gauge("trickbot_ratelimit_queue_depth", "Telegram calls waiting for a rate limit token", rateLimiter::getQueueDepth);
+        metrics.counter("trickbot_ratelimit_throttled_total", "Telegram calls delayed by the rate limiter", rateLimiter::getThrottledCount);
+        metrics.counter("trickbot_ratelimit_retries_total", "Telegram calls retried after 429", rateLimiter::getRetryCount);
+        metrics.counter("trickbot_collage_cache_hits_total", "Pile collages served from cache", pileRenderer::getHitCount);
+        metrics.counter("trickbot_collage_cache_misses_total", "Pile collages rendered", pileRenderer::getMissCount);
+        metrics.counter("trickbot_template_cache_hits_total", "Keyboards, welcome texts and media groups reused", templateCache::getHitCount);
+        metrics.counter("trickbot_template_cache_misses_total", "Keyboards, welcome texts and media groups built", templateCache::getMissCount);
+        metrics.gauge("trickbot_cluster_workers", "Worker nodes in the cluster hash ring", clusterRouter::getWorkerCount);
+        metrics.counter("trickbot_cluster_routed_total", "Updates forwarded to worker nodes", clusterRouter::getRoutedCount);
+        metrics.counter("trickbot_cluster_dropped_total", "Updates dropped because no worker could take them", clusterRouter::getDroppedCount);
+        metrics.counter("trickbot_cluster_shed_total", "Updates shed because their worker's queue stayed full", clusterRouter::getShedCount);
+        metrics.counter("trickbot_cluster_rebalances_total", "Worker joins and departures", clusterRouter::getRebalanceCount);
+        metrics.counter("trickbot_log_events_dropped_total", "Log events dropped by the per-logger rate cap", LoggerRateCapFilter::getDroppedCount);
+        metrics.gauge("trickbot_decks_resident", "Themed decks with images loaded", deckCatalog::getResidentDecks);
+        metrics.gauge("trickbot_decks_resident_bytes", "Bytes of resident deck images", deckCatalog::getResidentBytes);
+        metrics.counter("trickbot_deck_loads_total", "Themed decks loaded from disk", deckCatalog::getLoadCount);
+        metrics.counter("trickbot_deck_evictions_total", "Themed decks evicted to stay within the memory budget", deckCatalog::getEvictionCount);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext(path, this::handle);
+        server.start();
+        log.info("Metrics endpoint listening on {}:{}{}", host, getPort(), path);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package telegram.trickbot.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Records how long after JVM start each startup phase completed, up to the first update handled. The first update
+ * is the number that matters for autoscaling, so it is checked against {@code startup.first-update-target}.
+ */
+@Slf4j
+@Component
+public class StartupTimer {
+    private final BotMetrics metrics;
+    private final Duration firstUpdateTarget;
+    private final LongSupplier uptimeMillis;
+
+    @Autowired
+    public StartupTimer(BotMetrics metrics, @Value("${startup.first-update-target:PT10S}") Duration firstUpdateTarget) {
+        this(metrics, firstUpdateTarget, ManagementFactory.getRuntimeMXBean()::getUptime);
+    }
+
+    StartupTimer(BotMetrics metrics, Duration firstUpdateTarget, LongSupplier uptimeMillis) {
+        this.metrics = metrics;
+        this.firstUpdateTarget = firstUpdateTarget;
+        this.uptimeMillis = uptimeMillis;
+        metrics.onFirstUpdate(this::firstUpdate);
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void contextRefreshed() {
+        phase("context_refreshed");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ready() {
+        log.info("Ready to receive updates {} ms after JVM start", phase("ready"));
+    }
+
+    public long phase(String name) {
+        long millis = uptimeMillis.getAsLong();
+        metrics.recordStartupPhase(name, millis);
+        return millis;
+    }
+
+    private void firstUpdate() {
+        long millis = phase("first_update");
+        if (millis > firstUpdateTarget.toMillis()) {
+            log.warn("First update handled {} ms after JVM start, target is {} ms", millis, firstUpdateTarget.toMillis());
+        }
+        else {
+            log.info("First update handled {} ms after JVM start", millis);
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package telegram.trickbot.service;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+final class BufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    BufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+}
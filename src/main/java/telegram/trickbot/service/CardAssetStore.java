@@ -0,0 +1,210 @@
+package telegram.trickbot.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+@Slf4j
+@Component
+public class CardAssetStore {
+    private final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> reloadListeners = new CopyOnWriteArrayList<>();
+    private final DeckCatalog catalog;
+    private final ScheduledExecutorService watcher;
+
+    private CardAssetStore() {
+        this.catalog = DeckCatalog.empty();
+        this.watcher = null;
+    }
+
+    @Autowired
+    public CardAssetStore(DeckManager deckManager, DeckCatalog catalog,
+                          @Value("${assets.reload-interval:PT30S}") Duration reloadInterval,
+                          @Value("${assets.background-load:false}") boolean backgroundLoad) {
+        this(deckManager.getCards(), catalog, reloadInterval, backgroundLoad);
+    }
+
+    public CardAssetStore(List<String> cards, Duration reloadInterval) {
+        this(cards, DeckCatalog.empty(), reloadInterval, false);
+    }
+
+    public CardAssetStore(List<String> cards, DeckCatalog catalog, Duration reloadInterval) {
+        this(cards, catalog, reloadInterval, false);
+    }
+
+    // A background load lets startup finish before the images are read; until a card is loaded
+    // callers fall back to reading it from disk, and a broken card is logged instead of failing startup.
+    public CardAssetStore(List<String> cards, DeckCatalog catalog, Duration reloadInterval, boolean backgroundLoad) {
+        this.catalog = catalog;
+        if (!backgroundLoad) {
+            loadAll(cards, true);
+        }
+
+        if (reloadInterval.isZero() && !backgroundLoad) {
+            this.watcher = null;
+            return;
+        }
+        this.watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "asset-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (backgroundLoad) {
+            watcher.execute(() -> loadAll(cards, false));
+        }
+        if (!reloadInterval.isZero()) {
+            long interval = reloadInterval.toMillis();
+            watcher.scheduleWithFixedDelay(this::reloadChanged, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static CardAssetStore empty() {
+        return new CardAssetStore();
+    }
+
+    public boolean contains(String photoPath) {
+        return assets.containsKey(photoPath) || catalog.contains(photoPath);
+    }
+
+    public int size() {
+        return assets.size();
+    }
+
+    public long getChecksum(String photoPath) {
+        return asset(photoPath).checksum();
+    }
+
+    public InputStream open(String photoPath) {
+        if (!assets.containsKey(photoPath) && catalog.contains(photoPath)) {
+            try {
+                return catalog.open(photoPath);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Error loading card image " + photoPath, e);
+            }
+        }
+        return new BufferInputStream(asset(photoPath).data().duplicate());
+    }
+
+    public void addReloadListener(Consumer<String> listener) {
+        reloadListeners.add(listener);
+    }
+
+    public void addEvictionListener(Consumer<String> listener) {
+        catalog.addEvictionListener(listener);
+    }
+
+    public int reloadChanged() {
+        int reloaded = 0;
+        for (String photoPath : assets.keySet()) {
+            Asset current = assets.get(photoPath);
+            Path path = Path.of(photoPath);
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.size() == current.size()
+                        && attributes.lastModifiedTime().toMillis() == current.lastModified()) {
+                    continue;
+                }
+
+                Asset updated = load(path);
+                assets.put(photoPath, updated);
+                if (updated.checksum() != current.checksum()) {
+                    reloaded++;
+                    log.info("Reloaded card image {}", photoPath);
+                    reloadListeners.forEach(listener -> listener.accept(photoPath));
+                }
+            }
+            catch (IOException e) {
+                log.error("Error reloading card image {}, keeping the loaded copy: {}", photoPath, e.getMessage());
+            }
+        }
+        return reloaded;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+    }
+
+    private void loadAll(List<String> cards, boolean failFast) {
+        long totalBytes = 0;
+        for (String card : cards) {
+            try {
+                Asset asset = load(Path.of(card));
+                assets.put(card, asset);
+                totalBytes += asset.size();
+            }
+            catch (IOException e) {
+                if (failFast) {
+                    throw new IllegalStateException("Invalid card image " + card + ": " + e.getMessage(), e);
+                }
+                log.error("Invalid card image {}, serving it from disk: {}", card, e.getMessage());
+            }
+        }
+        log.info("Loaded {} card images, {} bytes off-heap", assets.size(), totalBytes);
+    }
+
+    private Asset asset(String photoPath) {
+        Asset asset = assets.get(photoPath);
+        if (asset == null) {
+            throw new IllegalArgumentException("Unknown card image: " + photoPath);
+        }
+        return asset;
+    }
+
+    // The mapping is copied into a direct buffer so that a card rewritten in place
+    // during a hot reload cannot fault readers of the mapped region.
+    private static Asset load(Path path) throws IOException {
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected file size " + size);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data = ByteBuffer.allocateDirect((int) size).put(mapped).flip().asReadOnlyBuffer();
+        }
+
+        if (ImageIO.read(new BufferInputStream(data.duplicate())) == null) {
+            throw new IOException("Unsupported image format");
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return new Asset(data, crc.getValue(), lastModified);
+    }
+
+    private record Asset(ByteBuffer data, long checksum, long lastModified) {
+
+        long size() {
+            return data.capacity();
+        }
+    }
+
+}
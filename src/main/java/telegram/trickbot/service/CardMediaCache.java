@@ -0,0 +1,135 @@
+package telegram.trickbot.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Slf4j
+@Component
+public class CardMediaCache {
+    private final ConcurrentMap<String, String> fileIds = new ConcurrentHashMap<>();
+    private final Path storeFile;
+    private final ReentrantLock saveLock = new ReentrantLock();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    public CardMediaCache() {
+        this.storeFile = null;
+    }
+
+    @Autowired
+    public CardMediaCache(@Value("${media.cache-file:${cluster.node-id:card}-media.properties}") String storeFile) {
+        this.storeFile = storeFile.isBlank() ? null : Path.of(storeFile);
+        load();
+    }
+
+    public String getFileId(String photoPath) {
+        return fileIds.get(photoPath);
+    }
+
+    public boolean contains(String photoPath) {
+        return fileIds.containsKey(photoPath);
+    }
+
+    public int size() {
+        return fileIds.size();
+    }
+
+    public void remember(String photoPath, Message message) {
+        String fileId = fileIdOf(message);
+        if (fileId != null) {
+            put(photoPath, fileId);
+        }
+    }
+
+    public static String fileIdOf(Message message) {
+        if (message == null || !message.hasPhoto()) {
+            return null;
+        }
+
+        return message.getPhoto().stream()
+                .max(Comparator.comparing(PhotoSize::getWidth))
+                .map(PhotoSize::getFileId)
+                .orElse(null);
+    }
+
+    public void put(String photoPath, String fileId) {
+        if (!fileId.equals(fileIds.put(photoPath, fileId))) {
+            log.info("Cached file ID for {}", photoPath);
+            save();
+        }
+    }
+
+    public void invalidate(String photoPath) {
+        if (fileIds.remove(photoPath) != null) {
+            log.info("Invalidated file ID for {}", photoPath);
+            save();
+        }
+    }
+
+    private void load() {
+        if (storeFile == null || !Files.exists(storeFile)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(storeFile)) {
+            properties.load(reader);
+            properties.stringPropertyNames().forEach(path -> fileIds.put(path, properties.getProperty(path)));
+            log.info("Loaded {} cached file IDs from {}", fileIds.size(), storeFile);
+        }
+        catch (IOException e) {
+            log.error("Error loading media cache: {}", e.getMessage());
+        }
+    }
+
+    // A ReentrantLock rather than synchronized keeps virtual threads unmounted while another thread writes the file.
+    // Changes made during a write are picked up by the thread holding the lock, so bursts coalesce into few writes.
+    private void save() {
+        if (storeFile == null) {
+            return;
+        }
+
+        dirty.set(true);
+        while (dirty.get() && saveLock.tryLock()) {
+            try {
+                while (dirty.getAndSet(false)) {
+                    write();
+                }
+            }
+            finally {
+                saveLock.unlock();
+            }
+        }
+    }
+
+    private void write() {
+        Properties properties = new Properties();
+        properties.putAll(fileIds);
+        Path tempFile = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempFile)) {
+                properties.store(writer, "Telegram file IDs of uploaded cards");
+            }
+            Files.move(tempFile, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            log.error("Error saving media cache: {}", e.getMessage());
+        }
+    }
+
+}
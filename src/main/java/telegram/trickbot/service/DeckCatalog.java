@@ -0,0 +1,251 @@
+package telegram.trickbot.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Themed decks found in the subdirectories of {@code decks.path}. Card lists and sizes are read on first access;
+ * image bytes are loaded off-heap when a deck is first used and the least recently used decks are dropped once the
+ * resident decks exceed {@code decks.memory-budget}.
+ */
+@Slf4j
+@Component
+public class DeckCatalog {
+    private static final String METADATA_FILE = "deck.properties";
+    private final Path root;
+    private final int deckSize;
+    private final String extension;
+    private volatile Map<String, DeckInfo> decks;
+    private volatile Map<String, String> deckOfCard;
+    private final LinkedHashMap<String, Map<String, ByteBuffer>> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Consumer<String>> evictionListeners = new CopyOnWriteArrayList<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final long budgetBytes;
+    private long residentBytes;
+
+    private DeckCatalog() {
+        this(null, 0, "", 0);
+    }
+
+    @Autowired
+    public DeckCatalog(DeckManager deckManager,
+                       @Value("${decks.path:}") String root,
+                       @Value("${pictures.extension}") String extension,
+                       @Value("${decks.memory-budget:64MB}") DataSize memoryBudget) {
+        this(root.isBlank() ? null : Path.of(root), deckManager.getLayout().getDeckSize(), extension,
+                memoryBudget.toBytes());
+    }
+
+    public DeckCatalog(Path root, int deckSize, String extension, long budgetBytes) {
+        this.root = root;
+        this.deckSize = deckSize;
+        this.extension = extension;
+        this.budgetBytes = budgetBytes;
+    }
+
+    public static DeckCatalog empty() {
+        return new DeckCatalog();
+    }
+
+    public List<DeckInfo> getDecks() {
+        return List.copyOf(decks().values());
+    }
+
+    public Optional<DeckInfo> findDeck(String id) {
+        return Optional.ofNullable(decks().get(id));
+    }
+
+    public boolean contains(String photoPath) {
+        return root != null && deckOfCard().containsKey(photoPath);
+    }
+
+    public InputStream open(String photoPath) throws IOException {
+        String deckId = deckOfCard().get(photoPath);
+        if (deckId == null) {
+            throw new IllegalArgumentException("Unknown card image: " + photoPath);
+        }
+        return new BufferInputStream(load(deckId).get(photoPath).duplicate());
+    }
+
+    public void addEvictionListener(Consumer<String> listener) {
+        evictionListeners.add(listener);
+    }
+
+    public int getResidentDecks() {
+        synchronized (resident) {
+            return resident.size();
+        }
+    }
+
+    public long getResidentBytes() {
+        synchronized (resident) {
+            return residentBytes;
+        }
+    }
+
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Map<String, ByteBuffer> load(String deckId) throws IOException {
+        synchronized (resident) {
+            Map<String, ByteBuffer> images = resident.get(deckId);
+            if (images != null) {
+                return images;
+            }
+        }
+
+        DeckInfo deck = decks().get(deckId);
+        Map<String, ByteBuffer> images = new HashMap<>();
+        long bytes = 0;
+        for (String card : deck.cards()) {
+            ByteBuffer data = read(Path.of(card));
+            images.put(card, data);
+            bytes += data.capacity();
+        }
+        loads.increment();
+        log.info("Loaded deck {}: {} bytes off-heap", deckId, bytes);
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (resident) {
+            Map<String, ByteBuffer> raced = resident.get(deckId);
+            if (raced != null) {
+                return raced;
+            }
+            resident.put(deckId, images);
+            residentBytes += bytes;
+
+            Iterator<Map.Entry<String, Map<String, ByteBuffer>>> eldest = resident.entrySet().iterator();
+            while (residentBytes > budgetBytes && eldest.hasNext()) {
+                Map.Entry<String, Map<String, ByteBuffer>> entry = eldest.next();
+                if (entry.getKey().equals(deckId)) {
+                    continue;
+                }
+                residentBytes -= entry.getValue().values().stream().mapToLong(ByteBuffer::capacity).sum();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+
+        for (String evictedDeck : evicted) {
+            evictions.increment();
+            log.info("Evicted deck {} to stay within the memory budget", evictedDeck);
+            decks().get(evictedDeck).cards().forEach(card -> evictionListeners.forEach(listener -> listener.accept(card)));
+        }
+        return images;
+    }
+
+    private Map<String, DeckInfo> decks() {
+        Map<String, DeckInfo> current = decks;
+        if (current == null) {
+            synchronized (this) {
+                if (decks == null) {
+                    Map<String, DeckInfo> found = root != null ? discover(root, deckSize, extension) : Collections.emptyMap();
+                    Map<String, String> cards = new HashMap<>();
+                    found.values().forEach(deck -> deck.cards().forEach(card -> cards.put(card, deck.id())));
+                    deckOfCard = cards;
+                    decks = found;
+                    if (root != null) {
+                        log.info("Found {} decks in {}, memory budget {} bytes", found.size(), root, budgetBytes);
+                    }
+                }
+                current = decks;
+            }
+        }
+        return current;
+    }
+
+    private Map<String, String> deckOfCard() {
+        decks();
+        return deckOfCard;
+    }
+
+    private static ByteBuffer read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected file size " + size + ": " + path);
+            }
+            ByteBuffer data = ByteBuffer.allocateDirect((int) size);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // keep reading until the buffer is full
+            }
+            return data.flip().asReadOnlyBuffer();
+        }
+    }
+
+    private static Map<String, DeckInfo> discover(Path root, int deckSize, String extension) {
+        Map<String, DeckInfo> found = new TreeMap<>();
+        try (Stream<Path> directories = Files.list(root)) {
+            directories.filter(Files::isDirectory).sorted().forEach(directory -> {
+                try {
+                    DeckInfo deck = describe(directory, deckSize, extension);
+                    found.put(deck.id(), deck);
+                }
+                catch (IOException e) {
+                    log.warn("Skipping deck {}: {}", directory.getFileName(), e.getMessage());
+                }
+            });
+        }
+        catch (IOException e) {
+            log.error("Error listing decks in {}: {}", root, e.getMessage());
+        }
+        return Collections.unmodifiableMap(found);
+    }
+
+    private static DeckInfo describe(Path directory, int deckSize, String extension) throws IOException {
+        String id = directory.getFileName().toString();
+        String title = id;
+        Path metadata = directory.resolve(METADATA_FILE);
+        if (Files.exists(metadata)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(metadata)) {
+                properties.load(reader);
+            }
+            title = properties.getProperty("title", id);
+        }
+
+        List<String> cards = new ArrayList<>(deckSize);
+        long totalBytes = 0;
+        for (int i = 1; i <= deckSize; i++) {
+            Path card = directory.resolve(i + extension);
+            totalBytes += Files.size(card);
+            cards.add(card.toString());
+        }
+        return new DeckInfo(id, title, List.copyOf(cards), totalBytes);
+    }
+
+    public record DeckInfo(String id, String title, List<String> cards, long totalBytes) {
+    }
+
+}
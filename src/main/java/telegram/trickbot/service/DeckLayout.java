@@ -0,0 +1,134 @@
+package telegram.trickbot.service;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Getter
+public final class DeckLayout {
+    private static final int MAX_DECK_SIZE = Byte.MAX_VALUE;
+    // A pile is sent as one media group, which holds at most 10 photos.
+    private static final int MAX_PILE_SIZE = 9;
+    private static final int MAX_ROUNDS = 32;
+    private static final ConcurrentMap<Long, DeckLayout> LAYOUTS = new ConcurrentHashMap<>();
+
+    private final int piles;
+    private final int pileSize;
+    private final int deckSize;
+    private final int rounds;
+    private final int selectedCard;
+    @Getter(AccessLevel.NONE)
+    private final byte[][] permutations;
+    @Getter(AccessLevel.NONE)
+    private final byte[][] cycleStarts;
+
+    private DeckLayout(int piles, int pileSize) {
+        this.piles = piles;
+        this.pileSize = pileSize;
+        this.deckSize = piles * pileSize;
+        this.permutations = new byte[piles][];
+        this.cycleStarts = new byte[piles][];
+        for (int chosen = 0; chosen < piles; chosen++) {
+            permutations[chosen] = buildPermutation(chosen);
+            cycleStarts[chosen] = findCycleStarts(permutations[chosen]);
+        }
+
+        int[] convergence = findConvergence();
+        this.rounds = convergence[0];
+        this.selectedCard = convergence[1];
+    }
+
+    public static DeckLayout of(int piles, int pileSize) {
+        if (piles < 3 || piles % 2 == 0 || pileSize < 3 || pileSize % 2 == 0) {
+            throw new IllegalArgumentException(
+                    "Piles and pile size must be odd and at least 3: " + piles + "x" + pileSize);
+        }
+        if (pileSize > MAX_PILE_SIZE || piles * pileSize > MAX_DECK_SIZE) {
+            throw new IllegalArgumentException("Deck layout is too large: " + piles + "x" + pileSize);
+        }
+        return LAYOUTS.computeIfAbsent(((long) piles << 32) | pileSize, key -> new DeckLayout(piles, pileSize));
+    }
+
+    public void apply(byte[] deck, int chosenPile) {
+        byte[] permutation = permutations[chosenPile - 1];
+        for (byte start : cycleStarts[chosenPile - 1]) {
+            byte first = deck[start];
+            int j = start;
+            while (permutation[j] != start) {
+                deck[j] = deck[permutation[j]];
+                j = permutation[j];
+            }
+            deck[j] = first;
+        }
+    }
+
+    public boolean isValidPile(int pile) {
+        return pile >= 1 && pile <= piles;
+    }
+
+    // The chosen pile is gathered into the middle, the other piles keep their order around it,
+    // and the cards are dealt back row by row. Each entry is the old position of the card that
+    // lands at that index.
+    private byte[] buildPermutation(int chosen) {
+        int[] pileOrder = new int[piles];
+        int middle = piles / 2;
+        for (int slot = 0, pile = 0; slot < piles; slot++) {
+            if (slot == middle) {
+                pileOrder[slot] = chosen;
+                continue;
+            }
+            if (pile == chosen) {
+                pile++;
+            }
+            pileOrder[slot] = pile++;
+        }
+
+        byte[] permutation = new byte[deckSize];
+        for (int pile = 0; pile < piles; pile++) {
+            for (int row = 0; row < pileSize; row++) {
+                int gathered = row * piles + pile;
+                permutation[pile * pileSize + row] =
+                        (byte) (pileOrder[gathered / pileSize] * pileSize + gathered % pileSize);
+            }
+        }
+        return permutation;
+    }
+
+    private byte[] findCycleStarts(byte[] permutation) {
+        boolean[] visited = new boolean[deckSize];
+        byte[] starts = new byte[deckSize];
+        int count = 0;
+        for (int i = 0; i < deckSize; i++) {
+            if (visited[i] || permutation[i] == i) {
+                continue;
+            }
+            starts[count++] = (byte) i;
+            for (int j = i; !visited[j]; j = permutation[j]) {
+                visited[j] = true;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    // Follows every starting position of the guessed card, always choosing the pile that holds it,
+    // until all of them end up at the same index.
+    private int[] findConvergence() {
+        int[] positions = new int[deckSize];
+        Arrays.setAll(positions, i -> i);
+        int middle = piles / 2;
+
+        for (int round = 1; round <= MAX_ROUNDS; round++) {
+            for (int i = 0; i < deckSize; i++) {
+                int gathered = middle * pileSize + positions[i] % pileSize;
+                positions[i] = (gathered % piles) * pileSize + gathered / piles;
+            }
+            if (Arrays.stream(positions).allMatch(position -> position == positions[0])) {
+                return new int[]{round, positions[0]};
+            }
+        }
+        throw new IllegalArgumentException("Deck layout does not converge: " + piles + "x" + pileSize);
+    }
+
+}
@@ -1,108 +1,154 @@
 package telegram.trickbot.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
+import java.util.random.RandomGenerator;
 import java.util.stream.IntStream;
 
 @Slf4j
 @Component
 public class DeckManager {
-    private static final int DECK_SIZE = 21;
-    private static final int PILE_SIZE = 7;
-    private static final int FIRST_CARD = 0;
-    private static final int FOURTEENTH_CARD = 14;
-    private static final int SELECTED_CARD = 10;
-    private List<String> deck;
+    private static final int DEFAULT_PILES = 3;
+    private static final int DEFAULT_PILE_SIZE = 7;
+    private final DeckLayout layout;
+    private final List<String> cards;
     private final String picturesPath;
     private final String picturesExtension;
+    private final ShuffleService shuffleService;
 
+    public DeckManager(String picturesPath, String picturesExtension) {
+        this(picturesPath, picturesExtension, DEFAULT_PILES, DEFAULT_PILE_SIZE);
+    }
+
+    public DeckManager(String picturesPath, String picturesExtension, int piles, int pileSize) {
+        this(picturesPath, picturesExtension, piles, pileSize, new ShuffleService());
+    }
+
+    @Autowired
     public DeckManager(@Value("${pictures.path}") String picturesPath,
-                       @Value("${pictures.extension}") String picturesExtension) {
+                       @Value("${pictures.extension}") String picturesExtension,
+                       @Value("${deck.piles:3}") int piles,
+                       @Value("${deck.pile-size:7}") int pileSize,
+                       ShuffleService shuffleService) {
+        this.shuffleService = shuffleService;
         this.picturesPath = picturesPath;
         this.picturesExtension = picturesExtension;
-        initializeDeck();
-    }
-
-    private void initializeDeck() {
-        deck = new ArrayList<>();
-        IntStream.rangeClosed(1, DECK_SIZE).forEach(i -> deck.add(picturesPath + i + picturesExtension));
-        log.info("Deck initialized: {}", deck);
-        shuffleDeck();
-    }
-
-    public void shuffleDeck() {
-        Collections.shuffle(deck);
-        log.info("Deck shuffled: {}", deck);
-    }
-
-    public List<String> getPile1() {
-        List<String> pile1 = new ArrayList<>(deck.subList(FIRST_CARD, PILE_SIZE));
-        log.info("Pile 1: {}", pile1);
-        return pile1;
-    }
-
-    public List<String> getPile2() {
-        List<String> pile2 = new ArrayList<>(deck.subList(PILE_SIZE, FOURTEENTH_CARD));
-        log.info("Pile 2: {}", pile2);
-        return pile2;
-    }
-
-    public List<String> getPile3() {
-        List<String> pile3 = new ArrayList<>(deck.subList(FOURTEENTH_CARD, DECK_SIZE));
-        log.info("Pile 3: {}", pile3);
-        return pile3;
-    }
-
-    public void updateDeck(int chosenPile) {
-        log.info("chosen pile: {}", chosenPile);
-        List<String> pile1 = getPile1();
-        List<String> pile2 = getPile2();
-        List<String> pile3 = getPile3();
-        List<String> newDeck = new ArrayList<>();
-
-        switch (chosenPile) {
-            case 1:
-                newDeck.addAll(pile2);
-                newDeck.addAll(pile1);
-                newDeck.addAll(pile3);
-                break;
-            case 2:
-                newDeck.addAll(pile1);
-                newDeck.addAll(pile2);
-                newDeck.addAll(pile3);
-                break;
-            case 3:
-                newDeck.addAll(pile1);
-                newDeck.addAll(pile3);
-                newDeck.addAll(pile2);
-                break;
-            default:
-                log.error("Invalid chosen pile: {}", chosenPile);
+        this.layout = DeckLayout.of(piles, pileSize);
+        this.cards = initializeCards();
+        log.info("Deck layout: {} piles of {} cards, {} rounds, selected card index {}",
+                layout.getPiles(), layout.getPileSize(), layout.getRounds(), layout.getSelectedCard());
+    }
+
+    private List<String> initializeCards() {
+        List<String> cards = IntStream.rangeClosed(1, layout.getDeckSize())
+                .mapToObj(i -> picturesPath + i + picturesExtension)
+                .toList();
+        log.debug("Deck initialized: {}", cards);
+        return cards;
+    }
+
+    public DeckLayout getLayout() {
+        return layout;
+    }
+
+    public List<String> getCards() {
+        return cards;
+    }
+
+    public long nextSeed() {
+        return shuffleService.nextSeed();
+    }
+
+    public byte[] newDeck() {
+        return newDeck(nextSeed());
+    }
+
+    public byte[] newDeck(long seed) {
+        byte[] deck = orderedDeck();
+        shuffleService.shuffle(deck, seed);
+        if (log.isDebugEnabled()) {
+            log.debug("Deck shuffled with seed {}: {}", seed, Arrays.toString(deck));
         }
+        return deck;
+    }
 
-        Arrays.asList(pile1, pile2, pile3).forEach(List::clear);
+    public byte[] replayDeck(long seed, byte[] choices) {
+        byte[] deck = newDeck(seed);
+        for (byte choice : choices) {
+            updateDeck(deck, choice);
+        }
+        return deck;
+    }
+
+    private byte[] orderedDeck() {
+        byte[] deck = new byte[layout.getDeckSize()];
+        for (int i = 0; i < deck.length; i++) {
+            deck[i] = (byte) i;
+        }
+        return deck;
+    }
 
-        IntStream.range(FIRST_CARD, PILE_SIZE)
-                .forEach(j -> {
-                    pile1.add(newDeck.get(j * 3));
-                    pile2.add(newDeck.get(j * 3 + 1));
-                    pile3.add(newDeck.get(j * 3 + 2));
-                });
+    public void shuffleDeck(byte[] deck) {
+        shuffleService.shuffle(deck, nextSeed());
+    }
+
+    public void shuffleDeck(byte[] deck, RandomGenerator random) {
+        ShuffleService.shuffle(deck, random);
+        if (log.isDebugEnabled()) {
+            log.debug("Deck shuffled: {}", Arrays.toString(deck));
+        }
+    }
+
+    public List<String> getPile1(byte[] deck) {
+        return getPile(deck, 1);
+    }
+
+    public List<String> getPile2(byte[] deck) {
+        return getPile(deck, 2);
+    }
+
+    public List<String> getPile3(byte[] deck) {
+        return getPile(deck, 3);
+    }
+
+    public List<String> getPile(byte[] deck, int pile) {
+        return getPile(deck, pile, cards);
+    }
+
+    public List<String> getPile(byte[] deck, int pile, List<String> cards) {
+        int pileSize = layout.getPileSize();
+        List<String> cardPaths = new ArrayList<>(pileSize);
+        int from = (pile - 1) * pileSize;
+        for (int i = from; i < from + pileSize; i++) {
+            cardPaths.add(cards.get(deck[i]));
+        }
+        return cardPaths;
+    }
+
+    public void updateDeck(byte[] deck, int chosenPile) {
+        if (!layout.isValidPile(chosenPile)) {
+            log.error("Invalid chosen pile: {}", chosenPile);
+            throw new IllegalArgumentException("Invalid chosen pile: " + chosenPile);
+        }
+
+        layout.apply(deck, chosenPile);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Chosen pile: {}, updated deck: {}", chosenPile, Arrays.toString(deck));
+        }
+    }
 
-        deck.clear();
-        deck.addAll(pile1);
-        deck.addAll(pile2);
-        deck.addAll(pile3);
-        log.info("Updated deck: {}", deck);
+    public String getSelectedCard(byte[] deck) {
+        return getSelectedCard(deck, cards);
     }
 
-    public String getSelectedCard() {
-        return deck.get(SELECTED_CARD);
+    public String getSelectedCard(byte[] deck, List<String> cards) {
+        return cards.get(deck[layout.getSelectedCard()]);
     }
 
 }
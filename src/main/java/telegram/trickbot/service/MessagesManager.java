@@ -1,38 +1,110 @@
 package telegram.trickbot.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
 import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.bots.AbsSender;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import telegram.trickbot.metrics.BotMetrics;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 
 @Component
 @Slf4j
 public class MessagesManager {
-    private final TelegramLongPollingBot bot;
+    private final AbsSender bot;
+    private final CardMediaCache mediaCache;
+    private final OutboundRateLimiter rateLimiter;
+    private final PileRenderer pileRenderer;
+    private final CardAssetStore assetStore;
+    private final BotMetrics metrics;
+    private final RequestTemplateCache templates;
     private static final String WELCOME_MESSAGE =
             "Приветствую вас, %s! Нажмите на кнопку чтобы начать. " +
                     "Из появившегося списка компаний загадайте одну. " +
-                    "Далее три раза подряд укажите в какой стопке она находится.";
+                    "Далее %s подряд укажите в какой стопке она находится.";
+    private static final int BUTTONS_PER_ROW = 3;
+    private static final String PILE_FILE = "pile.png";
+    // The sender's connection pool has room for every outbound step the scheduler lets through plus these callback
+    // answers, which come straight from update handling; a caller that found the pool full would wait inside its
+    // monitor and pin a virtual thread's carrier.
+    private final Semaphore callbackConnections;
 
-    public MessagesManager(TelegramLongPollingBot bot) {
+    public MessagesManager(AbsSender bot) {
+        this(bot, new CardMediaCache(), OutboundRateLimiter.unlimited());
+    }
+
+    public MessagesManager(AbsSender bot, CardMediaCache mediaCache, OutboundRateLimiter rateLimiter) {
+        this(bot, mediaCache, rateLimiter, PileRenderer.disabled(), CardAssetStore.empty(), new BotMetrics());
+    }
+
+    public MessagesManager(AbsSender bot, CardMediaCache mediaCache, OutboundRateLimiter rateLimiter,
+                           PileRenderer pileRenderer, CardAssetStore assetStore, BotMetrics metrics) {
+        this(bot, mediaCache, rateLimiter, pileRenderer, assetStore, metrics, new RequestTemplateCache());
+    }
+
+    public MessagesManager(AbsSender bot, CardMediaCache mediaCache, OutboundRateLimiter rateLimiter,
+                           PileRenderer pileRenderer, CardAssetStore assetStore, BotMetrics metrics,
+                           RequestTemplateCache templates) {
+        this(bot, mediaCache, rateLimiter, pileRenderer, assetStore, metrics, templates, 8);
+    }
+
+    @Autowired
+    public MessagesManager(@Qualifier("telegramSender") AbsSender bot, CardMediaCache mediaCache,
+                           OutboundRateLimiter rateLimiter, PileRenderer pileRenderer, CardAssetStore assetStore,
+                           BotMetrics metrics, RequestTemplateCache templates,
+                           @Value("${telegram.callback-connections:8}") int callbackConnections) {
         this.bot = bot;
+        this.mediaCache = mediaCache;
+        this.rateLimiter = rateLimiter;
+        this.pileRenderer = pileRenderer;
+        this.assetStore = assetStore;
+        this.metrics = metrics;
+        this.templates = templates;
+        this.callbackConnections = new Semaphore(callbackConnections);
+        assetStore.addReloadListener(mediaCache::invalidate);
     }
 
-    public void sendWelcomeMessage(long chatId, String userName) {
-        String text = String.format(WELCOME_MESSAGE, userName);
+    public void sendWelcomeMessage(long chatId, String userName, int rounds) {
+        RequestTemplateCache.WelcomeTemplate template = templates.welcome(rounds, this::createWelcomeTemplate);
+        String text = template.text(userName);
+        try {
+            execute(chatId, "SendMessage", () -> bot.execute(SendMessage.builder()
+                    .chatId(chatId)
+                    .text(text)
+                    .parseMode("Markdown")
+                    .replyMarkup(template.keyboard())
+                    .disableWebPagePreview(true)
+                    .build()
+            ));
+        }
+        catch (TelegramApiException e) {
+            log.error("Error sending welcome message: {}", e.getMessage());
+        }
+    }
 
+    private RequestTemplateCache.WelcomeTemplate createWelcomeTemplate(int rounds) {
+        String[] parts = String.format(WELCOME_MESSAGE, "%s", roundsText(rounds)).split("%s", 2);
         InlineKeyboardMarkup keyboard = InlineKeyboardMarkup.builder()
                 .keyboardRow(List.of(
                         InlineKeyboardButton.builder()
@@ -40,86 +112,326 @@ public class MessagesManager {
                                 .callbackData("start_trick")
                                 .build()))
                 .build();
+        return new RequestTemplateCache.WelcomeTemplate(parts[0], parts[1], keyboard);
+    }
+
+    public void answerCallbackQuery(String callbackQueryId) {
+        answerCallbackQuery(callbackQueryId, null);
+    }
+
+    public void answerCallbackQuery(String callbackQueryId, String text) {
         try {
-            bot.execute(SendMessage.builder()
-                    .chatId(chatId)
+            withCallbackConnection(() -> metrics.timeCall("AnswerCallbackQuery", () -> bot.execute(AnswerCallbackQuery.builder()
+                    .callbackQueryId(callbackQueryId)
                     .text(text)
-                    .parseMode("Markdown")
-                    .replyMarkup(keyboard)
-                    .disableWebPagePreview(true)
-                    .build()
-            );
+                    .build())));
         }
         catch (TelegramApiException e) {
-            log.error("Error sending welcome message: {}", e.getMessage());
+            log.warn("Error answering callback query: {}", e.getMessage());
         }
     }
 
     public void sendTextMessage(long chatId, String text) {
         try {
-            bot.execute(SendMessage.builder()
+            execute(chatId, "SendMessage", () -> bot.execute(SendMessage.builder()
                     .chatId(chatId)
                     .text(text)
                     .parseMode("Markdown")
-                    .build());
+                    .build()));
         }
         catch (TelegramApiException e) {
             log.error("Error sending text message: {}", e.getMessage());
         }
     }
 
+    public void sendPile(long chatId, List<String> pile) {
+        sendPile(chatId, pile, null, null);
+    }
+
+    public Message sendPile(long chatId, List<String> pile, String caption, InlineKeyboardMarkup keyboardMarkup) {
+        PileRenderer.Collage collage = renderCollage(pile);
+        if (collage == null) {
+            sendMediaGroup(chatId, pile, caption);
+            return null;
+        }
+
+        boolean cached = collage.getFileId() != null;
+        try {
+            return executeCollage(chatId, collage, caption, keyboardMarkup);
+        }
+        catch (TelegramApiException e) {
+            if (!cached) {
+                log.error("Error sending pile collage: {}", e.getMessage());
+                return null;
+            }
+
+            log.warn("Cached pile collage rejected, uploading again: {}", e.getMessage());
+            collage.setFileId(null);
+            try {
+                return executeCollage(chatId, collage, caption, keyboardMarkup);
+            }
+            catch (TelegramApiException retryException) {
+                log.error("Error sending pile collage: {}", retryException.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private Message executeCollage(long chatId, PileRenderer.Collage collage, String caption,
+                                   InlineKeyboardMarkup keyboardMarkup) throws TelegramApiException {
+        String fileId = collage.getFileId();
+        Message message = execute(chatId, "SendPhoto", () -> bot.execute(SendPhoto.builder()
+                .chatId(chatId)
+                .photo(fileId != null ? new InputFile(fileId) : new InputFile(new ByteArrayInputStream(collage.getPng()), PILE_FILE))
+                .caption(caption)
+                .replyMarkup(keyboardMarkup)
+                .build()));
+        rememberCollage(collage, message);
+        return message;
+    }
+
+    private static void rememberCollage(PileRenderer.Collage collage, Serializable result) {
+        if (result instanceof Message message) {
+            String fileId = CardMediaCache.fileIdOf(message);
+            if (fileId != null) {
+                collage.setFileId(fileId);
+            }
+        }
+    }
+
+    public boolean editPile(long chatId, int messageId, List<String> pile, String caption,
+                            InlineKeyboardMarkup keyboardMarkup) {
+        PileRenderer.Collage collage = renderCollage(pile);
+        if (collage == null) {
+            return false;
+        }
+
+        try {
+            Serializable result = execute(chatId, "EditMessageMedia", () -> bot.execute(EditMessageMedia.builder()
+                    .chatId(chatId)
+                    .messageId(messageId)
+                    .media(collageMedia(collage, caption))
+                    .replyMarkup(keyboardMarkup)
+                    .build()));
+            rememberCollage(collage, result);
+            return true;
+        }
+        catch (TelegramApiRequestException e) {
+            if (OutboundRateLimiter.isTooManyRequests(e)) {
+                // A new message would hit the same limit and leave the old pile behind, so the round has failed.
+                throw new OutboundRateLimiter.RateLimitedException("Pile message not edited: " + e.getMessage(), e);
+            }
+            log.warn("Error editing pile message, sending a new one: {}", e.getMessage());
+            return false;
+        }
+        catch (TelegramApiException e) {
+            log.warn("Error editing pile message, sending a new one: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static InputMediaPhoto collageMedia(PileRenderer.Collage collage, String caption) {
+        InputMediaPhoto media = new InputMediaPhoto();
+        String fileId = collage.getFileId();
+        if (fileId != null) {
+            media.setMedia(fileId);
+        }
+        else {
+            media.setMedia(new ByteArrayInputStream(collage.getPng()), PILE_FILE);
+        }
+        media.setCaption(caption);
+        return media;
+    }
+
+    private PileRenderer.Collage renderCollage(List<String> pile) {
+        if (!pileRenderer.isEnabled()) {
+            return null;
+        }
+
+        try {
+            return pileRenderer.collage(pile);
+        }
+        catch (IOException e) {
+            log.error("Error rendering pile collage, sending media group: {}", e.getMessage());
+            return null;
+        }
+    }
+
     public void sendMediaGroup(long chatId, List<String> pile) {
+        sendMediaGroup(chatId, pile, null);
+    }
+
+    public void sendMediaGroup(long chatId, List<String> pile, String caption) {
+        boolean cached = pile.stream().anyMatch(mediaCache::contains);
+        try {
+            executeMediaGroup(chatId, pile, caption);
+        }
+        catch (TelegramApiException e) {
+            if (!cached) {
+                log.error("Error sending media group: {}", e.getMessage());
+                return;
+            }
+
+            log.warn("Cached media group rejected, uploading again: {}", e.getMessage());
+            pile.forEach(mediaCache::invalidate);
+            try {
+                executeMediaGroup(chatId, pile, caption);
+            }
+            catch (TelegramApiException retryException) {
+                log.error("Error sending media group: {}", retryException.getMessage());
+            }
+        }
+    }
+
+    private void executeMediaGroup(long chatId, List<String> pile, String caption) throws TelegramApiException {
+        List<InputMedia> cached = templates.mediaGroup(pile, caption, mediaCache::getFileId);
+        if (cached != null) {
+            execute(chatId, "SendMediaGroup", () -> bot.execute(SendMediaGroup.builder()
+                    .chatId(chatId)
+                    .medias(cached)
+                    .build()));
+            return;
+        }
+
+        // Built per attempt: a retried 429 must not resend streams the first attempt has already read.
+        List<Message> messages = execute(chatId, "SendMediaGroup", () -> bot.execute(SendMediaGroup.builder()
+                .chatId(chatId)
+                .medias(buildMediaGroup(pile, caption))
+                .build()));
+
+        if (messages != null) {
+            for (int i = 0; i < Math.min(messages.size(), pile.size()); i++) {
+                mediaCache.remember(pile.get(i), messages.get(i));
+            }
+        }
+    }
+
+    private List<InputMedia> buildMediaGroup(List<String> pile, String caption) {
         List<InputMedia> mediaGroup = new ArrayList<>();
         pile.forEach(photoPath -> {
             InputMediaPhoto photo = new InputMediaPhoto();
-            photo.setMedia(new InputFile(new File(photoPath)).getNewMediaFile(), photoPath);
+            String fileId = mediaCache.getFileId(photoPath);
+            if (fileId != null) {
+                photo.setMedia(fileId);
+            }
+            else if (assetStore.contains(photoPath)) {
+                photo.setMedia(assetStore.open(photoPath), photoPath);
+            }
+            else {
+                photo.setMedia(new InputFile(new File(photoPath)).getNewMediaFile(), photoPath);
+            }
             mediaGroup.add(photo);
         });
+        if (caption != null && !mediaGroup.isEmpty()) {
+            mediaGroup.get(0).setCaption(caption);
+        }
+        return mediaGroup;
+    }
 
+    public void sendPhoto(long chatId, String photoPath, String caption) {
+        boolean cached = mediaCache.contains(photoPath);
         try {
-            bot.execute(SendMediaGroup.builder()
-                    .chatId(chatId)
-                    .medias(mediaGroup)
-                    .build());
+            executePhoto(chatId, photoPath, caption);
         }
         catch (TelegramApiException e) {
-            log.error("Error sending media group: {}", e.getMessage());
+            if (!cached) {
+                log.error("Error sending photo: {}", e.getMessage());
+                return;
+            }
+
+            log.warn("Cached photo rejected, uploading again: {}", e.getMessage());
+            mediaCache.invalidate(photoPath);
+            try {
+                executePhoto(chatId, photoPath, caption);
+            }
+            catch (TelegramApiException retryException) {
+                log.error("Error sending photo: {}", retryException.getMessage());
+            }
         }
     }
 
-    public void sendPhoto(long chatId, String photoPath, String caption) {
+    private void executePhoto(long chatId, String photoPath, String caption) throws TelegramApiException {
+        String fileId = mediaCache.getFileId(photoPath);
+        Message message = execute(chatId, "SendPhoto", () -> bot.execute(SendPhoto.builder()
+                .chatId(chatId)
+                .photo(fileId != null ? new InputFile(fileId) : uploadFile(photoPath))
+                .caption(caption)
+                .build()));
+        mediaCache.remember(photoPath, message);
+    }
+
+    private <T> T execute(long chatId, String method, OutboundRateLimiter.TelegramCall<T> call) throws TelegramApiException {
+        return rateLimiter.execute(chatId, () -> metrics.timeCall(method, call));
+    }
+
+    private <T> T withCallbackConnection(OutboundRateLimiter.TelegramCall<T> call) throws TelegramApiException {
         try {
-            bot.execute(SendPhoto.builder()
-                    .chatId(chatId)
-                    .photo(new InputFile(new File(photoPath)))
-                    .caption(caption)
-                    .build());
+            callbackConnections.acquire();
         }
-        catch (TelegramApiException e) {
-            log.error("Error sending photo: {}", e.getMessage());
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TelegramApiException("Interrupted waiting for a connection", e);
+        }
+        try {
+            return call.execute();
+        }
+        finally {
+            callbackConnections.release();
         }
     }
 
-    public InlineKeyboardMarkup createInlineKeyboard() {
+    private InputFile uploadFile(String photoPath) {
+        if (assetStore.contains(photoPath)) {
+            return new InputFile(assetStore.open(photoPath), Path.of(photoPath).getFileName().toString());
+        }
+        return new InputFile(new File(photoPath));
+    }
+
+    public InlineKeyboardMarkup createInlineKeyboard(int piles) {
+        List<String> callbackData = new ArrayList<>();
+        for (int pile = 1; pile <= piles; pile++) {
+            callbackData.add(String.valueOf(pile));
+        }
+        return createInlineKeyboard(callbackData);
+    }
+
+    public InlineKeyboardMarkup createInlineKeyboard(List<String> callbackData) {
+        return templates.keyboard(callbackData, this::buildInlineKeyboard);
+    }
+
+    public InlineKeyboardMarkup buildInlineKeyboard(List<String> callbackData) {
         InlineKeyboardMarkup keyboardMarkup = new InlineKeyboardMarkup();
         List<List<InlineKeyboardButton>> rows = new ArrayList<>();
 
         List<InlineKeyboardButton> row = new ArrayList<>();
-        row.add(InlineKeyboardButton.builder().text("СТОПКА 1").callbackData("1").build());
-        row.add(InlineKeyboardButton.builder().text("СТОПКА 2").callbackData("2").build());
-        row.add(InlineKeyboardButton.builder().text("СТОПКА 3").callbackData("3").build());
-        rows.add(row);
-        keyboardMarkup.setKeyboard(rows);
+        for (int pile = 1; pile <= callbackData.size(); pile++) {
+            if (row.size() == BUTTONS_PER_ROW) {
+                rows.add(List.copyOf(row));
+                row = new ArrayList<>();
+            }
+            row.add(InlineKeyboardButton.builder().text("СТОПКА " + pile).callbackData(callbackData.get(pile - 1)).build());
+        }
+        rows.add(List.copyOf(row));
+        keyboardMarkup.setKeyboard(List.copyOf(rows));
         return keyboardMarkup;
     }
 
+    private String roundsText(int rounds) {
+        return switch (rounds) {
+            case 2 -> "два раза";
+            case 3 -> "три раза";
+            case 4 -> "четыре раза";
+            default -> rounds + " раз";
+        };
+    }
+
     public void sendMessageWithKeyboard(long chatId, String text, InlineKeyboardMarkup keyboardMarkup) {
         try {
-            bot.execute(SendMessage.builder()
+            execute(chatId, "SendMessage", () -> bot.execute(SendMessage.builder()
                     .chatId(chatId)
                     .text(text)
                     .replyMarkup(keyboardMarkup)
-                    .build());
+                    .build()));
         }
         catch (TelegramApiException e) {
             log.error("Error sending message with keyboard: {}", e.getMessage());
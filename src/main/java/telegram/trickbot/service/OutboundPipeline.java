@@ -0,0 +1,146 @@
+package telegram.trickbot.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import telegram.trickbot.metrics.BotMetrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Component
+public class OutboundPipeline {
+    private final ConcurrentMap<Long, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingSteps = new AtomicInteger();
+    private final ExecutorService sendExecutor;
+    private final OutboundScheduler scheduler;
+
+    public OutboundPipeline(int threads) {
+        this(Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("outbound-sender-", 1).daemon().factory()),
+                new BotMetrics(), threads, Duration.ofSeconds(2));
+    }
+
+    @Autowired
+    public OutboundPipeline(@Qualifier("sendExecutor") ExecutorService sendExecutor, BotMetrics metrics,
+                            @Value("${outbound.max-in-flight:32}") int maxInFlight,
+                            @Value("${outbound.aging:PT2S}") Duration aging) {
+        this.sendExecutor = sendExecutor;
+        this.scheduler = new OutboundScheduler(sendExecutor, metrics, maxInFlight, aging.toNanos());
+    }
+
+    public Sequence sequence(long chatId) {
+        return sequence(chatId, Priority.ROUND);
+    }
+
+    public Sequence sequence(long chatId, Priority priority) {
+        return new Sequence(chatId, priority);
+    }
+
+    public int activeChats() {
+        return tails.size();
+    }
+
+    public int getPendingSteps() {
+        return pendingSteps.get();
+    }
+
+    public int getQueuedSteps() {
+        return scheduler.getQueued();
+    }
+
+    private CompletableFuture<Void> submit(long chatId, List<Step> steps) {
+        CompletableFuture<Void> tail = tails.compute(chatId, (id, previous) -> {
+            CompletableFuture<Void> future = previous != null ? previous : CompletableFuture.completedFuture(null);
+            pendingSteps.addAndGet(steps.size());
+            for (Step step : steps) {
+                future = future.thenRunAsync(() -> runStep(chatId, step), executorFor(step));
+            }
+            return future;
+        });
+        tail.whenComplete((result, e) -> tails.remove(chatId, tail));
+        return tail;
+    }
+
+    private Executor executorFor(Step step) {
+        Executor scheduled = action -> scheduler.execute(step.priority(), action);
+        return step.delayMillis() > 0
+                ? CompletableFuture.delayedExecutor(step.delayMillis(), TimeUnit.MILLISECONDS, scheduled)
+                : scheduled;
+    }
+
+    private void runStep(long chatId, Step step) {
+        try {
+            step.action().run();
+        }
+        catch (RuntimeException e) {
+            log.error("Error sending to chat ID {}: {}", chatId, e.getMessage());
+        }
+        finally {
+            pendingSteps.decrementAndGet();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendExecutor.shutdown();
+    }
+
+    /**
+     * Outbound classes in the order they are sent when the send slots are saturated.
+     */
+    public enum Priority {
+        REVEAL, ROUND, NEW_GAME;
+
+        public String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private record Step(long delayMillis, Priority priority, Runnable action) {
+    }
+
+    public class Sequence {
+        private final long chatId;
+        private final List<Step> steps = new ArrayList<>();
+        private Priority priority;
+        private long pendingDelay;
+
+        private Sequence(long chatId, Priority priority) {
+            this.chatId = chatId;
+            this.priority = priority;
+        }
+
+        public Sequence send(Runnable action) {
+            steps.add(new Step(pendingDelay, priority, action));
+            pendingDelay = 0;
+            return this;
+        }
+
+        public Sequence priority(Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        public Sequence delay(long delayMillis) {
+            pendingDelay += delayMillis;
+            return this;
+        }
+
+        public CompletableFuture<Void> submit() {
+            return OutboundPipeline.this.submit(chatId, steps);
+        }
+    }
+
+}
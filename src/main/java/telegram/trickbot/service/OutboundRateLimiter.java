@@ -0,0 +1,163 @@
+package telegram.trickbot.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Component
+public class OutboundRateLimiter {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private final ConcurrentMap<Long, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+    private final TokenBucket globalBucket;
+    private final double chatPerSecond;
+    private final int chatBurst;
+    private final double groupPerSecond;
+    private final int groupBurst;
+    private final int maxRetries;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final ScheduledExecutorService cleaner;
+
+    @Autowired
+    public OutboundRateLimiter(@Value("${ratelimit.global-per-second:30}") double globalPerSecond,
+                               @Value("${ratelimit.chat-per-second:1}") double chatPerSecond,
+                               @Value("${ratelimit.chat-burst:10}") int chatBurst,
+                               @Value("${ratelimit.group-per-minute:20}") int groupPerMinute,
+                               @Value("${ratelimit.max-retries:3}") int maxRetries) {
+        long now = System.nanoTime();
+        this.globalBucket = new TokenBucket(globalPerSecond, globalPerSecond, now);
+        this.chatPerSecond = chatPerSecond;
+        this.chatBurst = chatBurst;
+        this.groupPerSecond = groupPerMinute / 60d;
+        this.groupBurst = groupPerMinute;
+        this.maxRetries = maxRetries;
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("ratelimit-cleaner").daemon().factory());
+        cleaner.scheduleWithFixedDelay(this::evictIdleBuckets, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public static OutboundRateLimiter unlimited() {
+        return new OutboundRateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 0);
+    }
+
+    public <T> T execute(long chatId, TelegramCall<T> call) throws TelegramApiException {
+        for (int attempt = 1; ; attempt++) {
+            acquire(chatId);
+            try {
+                return call.execute();
+            }
+            catch (TelegramApiRequestException e) {
+                if (!isTooManyRequests(e) || attempt > maxRetries) {
+                    throw e;
+                }
+
+                long retryAfterMillis = retryAfterMillis(e, attempt);
+                retried.increment();
+                log.warn("Too many requests for chat ID {}, retrying in {} ms (attempt {})", chatId, retryAfterMillis, attempt);
+                bucketFor(chatId).pauseUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    public long getRetryCount() {
+        return retried.sum();
+    }
+
+    public int evictIdleBuckets() {
+        long now = System.nanoTime();
+        AtomicInteger evicted = new AtomicInteger();
+        chatBuckets.keySet().forEach(chatId -> chatBuckets.computeIfPresent(chatId, (id, bucket) -> {
+            if (bucket.isIdle(now)) {
+                evicted.incrementAndGet();
+                return null;
+            }
+            return bucket;
+        }));
+        return evicted.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    private void acquire(long chatId) throws TelegramApiException {
+        waiting.incrementAndGet();
+        try {
+            await(bucketFor(chatId).reserve(System.nanoTime()));
+            await(globalBucket.reserve(System.nanoTime()));
+        }
+        finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private void await(long waitNanos) throws TelegramApiException {
+        if (waitNanos <= 0) {
+            return;
+        }
+
+        throttled.increment();
+        try {
+            OutboundScheduler.sleep(waitNanos);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TelegramApiException("Interrupted while waiting for rate limit", e);
+        }
+    }
+
+    private TokenBucket bucketFor(long chatId) {
+        return chatBuckets.computeIfAbsent(chatId, id -> id < 0
+                ? new TokenBucket(groupBurst, groupPerSecond, System.nanoTime())
+                : new TokenBucket(chatBurst, chatPerSecond, System.nanoTime()));
+    }
+
+    static boolean isTooManyRequests(TelegramApiRequestException e) {
+        return e.getErrorCode() != null && e.getErrorCode() == TOO_MANY_REQUESTS;
+    }
+
+    private long retryAfterMillis(TelegramApiRequestException e, int attempt) {
+        if (e.getParameters() != null && e.getParameters().getRetryAfter() != null) {
+            return TimeUnit.SECONDS.toMillis(e.getParameters().getRetryAfter());
+        }
+        return BASE_BACKOFF_MILLIS << (attempt - 1);
+    }
+
+    /**
+     * A request Telegram still answered with 429 once the retries ran out.
+     */
+    public static class RateLimitedException extends RuntimeException {
+
+        public RateLimitedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    @FunctionalInterface
+    public interface TelegramCall<T> {
+        T execute() throws TelegramApiException;
+    }
+
+}
@@ -0,0 +1,150 @@
+package telegram.trickbot.service;
+
+import telegram.trickbot.metrics.BotMetrics;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands outbound steps to the send executor at most {@code maxInFlight} at a time, taking the next one by
+ * priority class. The pipeline chains the steps of a chat, so a chat has at most one step queued here and FIFO
+ * order within a class is fair across chats. A step is promoted one class for every aging interval it waits, so
+ * lower classes are not starved. A running step that has to wait for the rate limiter gives its slot up for the
+ * wait and queues again with its original age.
+ */
+final class OutboundScheduler {
+    private static final ThreadLocal<Slot> SLOT = new ThreadLocal<>();
+    private final Queue<Task>[] queues;
+    private final Executor executor;
+    private final BotMetrics metrics;
+    private final int maxInFlight;
+    private final long agingNanos;
+    private int inFlight;
+    private int queued;
+
+    @SuppressWarnings("unchecked")
+    OutboundScheduler(Executor executor, BotMetrics metrics, int maxInFlight, long agingNanos) {
+        this.executor = executor;
+        this.metrics = metrics;
+        this.maxInFlight = maxInFlight;
+        this.agingNanos = agingNanos;
+        this.queues = new Queue[OutboundPipeline.Priority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new PriorityQueue<>(Comparator.comparingLong(Task::enqueuedAt));
+        }
+    }
+
+    void execute(OutboundPipeline.Priority priority, Runnable action) {
+        synchronized (this) {
+            queues[priority.ordinal()].add(new Task(priority, action, System.nanoTime(), null));
+            queued++;
+        }
+        dispatch();
+    }
+
+    synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Sleeps for the given time. On a thread running a scheduled step the slot is released for the sleep, and the
+     * step waits for a new one in its class as if it had been queued all along.
+     */
+    static void sleep(long nanos) throws InterruptedException {
+        Slot slot = SLOT.get();
+        if (slot == null) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return;
+        }
+        slot.scheduler().yieldSlot(slot.task(), nanos);
+    }
+
+    private void yieldSlot(Task task, long nanos) throws InterruptedException {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+        finally {
+            CompletableFuture<Void> resumed = new CompletableFuture<>();
+            synchronized (this) {
+                queues[task.priority().ordinal()].add(new Task(task.priority(), null, task.enqueuedAt(), resumed));
+                queued++;
+            }
+            dispatch();
+            resumed.join();
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                if (inFlight >= maxInFlight || (task = next(System.nanoTime())) == null) {
+                    return;
+                }
+                inFlight++;
+                queued--;
+            }
+            if (task.resumed() != null) {
+                task.resumed().complete(null);
+                continue;
+            }
+            try {
+                executor.execute(() -> run(task));
+            }
+            catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    inFlight--;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void run(Task task) {
+        metrics.recordOutboundWait(task.priority().label(), System.nanoTime() - task.enqueuedAt());
+        SLOT.set(new Slot(this, task));
+        try {
+            task.action().run();
+        }
+        finally {
+            SLOT.remove();
+            synchronized (this) {
+                inFlight--;
+            }
+            dispatch();
+        }
+    }
+
+    private Task next(long now) {
+        int best = -1;
+        long bestRank = Long.MAX_VALUE;
+        for (int i = 0; i < queues.length; i++) {
+            Task head = queues[i].peek();
+            if (head == null) {
+                continue;
+            }
+            long rank = agingNanos > 0 ? i - (now - head.enqueuedAt()) / agingNanos : i;
+            if (rank < bestRank) {
+                best = i;
+                bestRank = rank;
+            }
+        }
+        return best >= 0 ? queues[best].poll() : null;
+    }
+
+    private record Task(OutboundPipeline.Priority priority, Runnable action, long enqueuedAt,
+                        CompletableFuture<Void> resumed) {
+    }
+
+    private record Slot(OutboundScheduler scheduler, Task task) {
+    }
+
+}
@@ -0,0 +1,181 @@
+package telegram.trickbot.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Slf4j
+@Component
+public class PileRenderer {
+    private static final String FORMAT = "png";
+    private final boolean enabled;
+    private final int columns;
+    private final int tileSize;
+    private final int padding;
+    private final int cacheSize;
+    private final CardAssetStore assetStore;
+    private final ConcurrentMap<String, BufferedImage> cards = new ConcurrentHashMap<>();
+    private final Map<List<String>, Collage> collages;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PileRenderer(boolean enabled, int columns, int tileSize, int padding, int cacheSize) {
+        this(CardAssetStore.empty(), enabled, columns, tileSize, padding, cacheSize);
+    }
+
+    @Autowired
+    public PileRenderer(CardAssetStore assetStore,
+                        @Value("${render.collage:true}") boolean enabled,
+                        @Value("${render.columns:4}") int columns,
+                        @Value("${render.tile-size:256}") int tileSize,
+                        @Value("${render.padding:8}") int padding,
+                        @Value("${render.cache-size:512}") int cacheSize) {
+        this.assetStore = assetStore;
+        this.enabled = enabled;
+        this.columns = columns;
+        this.tileSize = tileSize;
+        this.padding = padding;
+        this.cacheSize = cacheSize;
+        this.collages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, Collage> eldest) {
+                return size() > PileRenderer.this.cacheSize;
+            }
+        };
+        assetStore.addReloadListener(this::invalidate);
+        assetStore.addEvictionListener(cards::remove);
+    }
+
+    public static PileRenderer disabled() {
+        return new PileRenderer(false, 1, 1, 0, 0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public byte[] render(List<String> pile) throws IOException {
+        return collage(pile).getPng();
+    }
+
+    public Collage collage(List<String> pile) throws IOException {
+        List<String> key = List.copyOf(pile);
+        synchronized (collages) {
+            Collage collage = collages.get(key);
+            if (collage != null) {
+                hits.increment();
+                return collage;
+            }
+        }
+
+        misses.increment();
+        Collage collage = new Collage(draw(key));
+        synchronized (collages) {
+            Collage raced = collages.putIfAbsent(key, collage);
+            return raced != null ? raced : collage;
+        }
+    }
+
+    public int size() {
+        synchronized (collages) {
+            return collages.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public void invalidate(String photoPath) {
+        cards.remove(photoPath);
+        synchronized (collages) {
+            collages.keySet().removeIf(pile -> pile.contains(photoPath));
+        }
+    }
+
+    private byte[] draw(List<String> pile) throws IOException {
+        int cols = Math.min(columns, pile.size());
+        int rows = (pile.size() + cols - 1) / cols;
+        int step = tileSize + padding;
+        BufferedImage collage = new BufferedImage(cols * step + padding, rows * step + padding, BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D graphics = collage.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, collage.getWidth(), collage.getHeight());
+
+            for (int i = 0; i < pile.size(); i++) {
+                BufferedImage card = loadCard(pile.get(i));
+                double scale = Math.min((double) tileSize / card.getWidth(), (double) tileSize / card.getHeight());
+                int width = (int) Math.round(card.getWidth() * scale);
+                int height = (int) Math.round(card.getHeight() * scale);
+                int x = padding + (i % cols) * step + (tileSize - width) / 2;
+                int y = padding + (i / cols) * step + (tileSize - height) / 2;
+                graphics.drawImage(card, x, y, width, height, null);
+            }
+        }
+        finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(collage, FORMAT, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A rendered pile and, once it has been sent, the Telegram file ID to send it by instead of uploading it again.
+     * The file ID lives and is dropped together with the collage, so a reloaded card never resends a stale image.
+     */
+    @Getter
+    public static final class Collage {
+        private final byte[] png;
+        @Setter
+        private volatile String fileId;
+
+        private Collage(byte[] png) {
+            this.png = png;
+        }
+    }
+
+    private BufferedImage loadCard(String photoPath) throws IOException {
+        BufferedImage card = cards.get(photoPath);
+        if (card != null) {
+            return card;
+        }
+
+        card = assetStore.contains(photoPath)
+                ? ImageIO.read(assetStore.open(photoPath))
+                : ImageIO.read(new File(photoPath));
+        if (card == null) {
+            throw new IOException("Unsupported image format: " + photoPath);
+        }
+        cards.put(photoPath, card);
+        log.debug("Decoded card {}", photoPath);
+        return card;
+    }
+
+}
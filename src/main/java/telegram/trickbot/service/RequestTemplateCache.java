@@ -0,0 +1,165 @@
+package telegram.trickbot.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.media.InputMedia;
+import org.telegram.telegrambots.meta.api.objects.media.InputMediaPhoto;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Pre-built parts of outbound requests that many chats share: pile keyboards, welcome texts by round count and
+ * media groups of piles whose cards all have Telegram file IDs. Cached objects are shared between requests and
+ * must not be modified. Each kind is an LRU bounded by {@code templates.cache-size}.
+ */
+@Component
+public class RequestTemplateCache {
+    private final Map<List<String>, InlineKeyboardMarkup> keyboards;
+    private final Map<Integer, WelcomeTemplate> welcomes;
+    private final Map<MediaGroupKey, MediaGroupTemplate> mediaGroups;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RequestTemplateCache() {
+        this(1024);
+    }
+
+    @Autowired
+    public RequestTemplateCache(@Value("${templates.cache-size:1024}") int cacheSize) {
+        this.keyboards = lru(cacheSize);
+        this.welcomes = lru(cacheSize);
+        this.mediaGroups = lru(cacheSize);
+    }
+
+    public InlineKeyboardMarkup keyboard(List<String> callbackData,
+                                         Function<List<String>, InlineKeyboardMarkup> builder) {
+        List<String> key = List.copyOf(callbackData);
+        return lookup(keyboards, key, () -> builder.apply(key));
+    }
+
+    public WelcomeTemplate welcome(int rounds, IntFunction<WelcomeTemplate> builder) {
+        return lookup(welcomes, rounds, () -> builder.apply(rounds));
+    }
+
+    /**
+     * Returns the media group for a pile sent by file IDs only, or {@code null} while some card has no file ID yet.
+     * A cached group is rebuilt when a card's file ID has changed since.
+     */
+    public List<InputMedia> mediaGroup(List<String> pile, String caption, Function<String, String> fileIds) {
+        MediaGroupKey key = new MediaGroupKey(List.copyOf(pile), caption);
+        MediaGroupTemplate template;
+        synchronized (mediaGroups) {
+            template = mediaGroups.get(key);
+        }
+        if (template != null && template.matches(key.pile(), fileIds)) {
+            hits.increment();
+            return template.medias();
+        }
+
+        misses.increment();
+        List<String> ids = new ArrayList<>(pile.size());
+        for (String photoPath : key.pile()) {
+            String fileId = fileIds.apply(photoPath);
+            if (fileId == null) {
+                return null;
+            }
+            ids.add(fileId);
+        }
+        template = MediaGroupTemplate.of(ids, caption);
+        synchronized (mediaGroups) {
+            mediaGroups.put(key, template);
+        }
+        return template.medias();
+    }
+
+    public int size() {
+        int size = 0;
+        synchronized (keyboards) {
+            size += keyboards.size();
+        }
+        synchronized (welcomes) {
+            size += welcomes.size();
+        }
+        synchronized (mediaGroups) {
+            size += mediaGroups.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private <K, V> V lookup(Map<K, V> cache, K key, Supplier<V> builder) {
+        synchronized (cache) {
+            V value = cache.get(key);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+        }
+
+        misses.increment();
+        V value = builder.get();
+        synchronized (cache) {
+            cache.put(key, value);
+        }
+        return value;
+    }
+
+    private static <K, V> Map<K, V> lru(int maxSize) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public record WelcomeTemplate(String prefix, String suffix, InlineKeyboardMarkup keyboard) {
+
+        public String text(String userName) {
+            return prefix + userName + suffix;
+        }
+    }
+
+    private record MediaGroupKey(List<String> pile, String caption) {
+    }
+
+    private record MediaGroupTemplate(List<String> fileIds, List<InputMedia> medias) {
+
+        static MediaGroupTemplate of(List<String> fileIds, String caption) {
+            List<InputMedia> medias = new ArrayList<>(fileIds.size());
+            for (String fileId : fileIds) {
+                medias.add(new InputMediaPhoto(fileId));
+            }
+            if (caption != null && !medias.isEmpty()) {
+                medias.get(0).setCaption(caption);
+            }
+            return new MediaGroupTemplate(List.copyOf(fileIds), List.copyOf(medias));
+        }
+
+        boolean matches(List<String> pile, Function<String, String> fileIds) {
+            for (int i = 0; i < pile.size(); i++) {
+                if (!Objects.equals(this.fileIds.get(i), fileIds.apply(pile.get(i)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
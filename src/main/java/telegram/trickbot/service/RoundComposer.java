@@ -0,0 +1,94 @@
+package telegram.trickbot.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Composes a round into one message per pile: the pile header is the photo caption and the question with its
+ * keyboard rides on the last pile. Later rounds of the same trick edit those messages in place.
+ */
+@Slf4j
+@Component
+public class RoundComposer {
+    public static final String QUESTION = "В какой стопке компания, которую вы загадали?";
+    private final MessagesManager messageSender;
+    private final boolean editRounds;
+    private final int maxChats;
+    private final Map<Long, int[]> messageIds;
+
+    public RoundComposer(MessagesManager messageSender) {
+        this(messageSender, true, 10_000);
+    }
+
+    @Autowired
+    public RoundComposer(MessagesManager messageSender,
+                         @Value("${compose.edit-rounds:true}") boolean editRounds,
+                         @Value("${compose.max-chats:10000}") int maxChats) {
+        this.messageSender = messageSender;
+        this.editRounds = editRounds;
+        this.maxChats = maxChats;
+        this.messageIds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+                return size() > RoundComposer.this.maxChats;
+            }
+        };
+    }
+
+    public boolean isEditing(int round) {
+        return editRounds && round > 0;
+    }
+
+    public void showPile(long chatId, int round, int pile, int piles, List<String> cards,
+                         InlineKeyboardMarkup keyboardMarkup) {
+        int[] ids = messagesFor(chatId, round, pile, piles);
+        String caption = keyboardMarkup != null ? header(pile) + "\n\n" + QUESTION : header(pile);
+
+        if (isEditing(round) && ids[pile - 1] != 0
+                && messageSender.editPile(chatId, ids[pile - 1], cards, caption, keyboardMarkup)) {
+            return;
+        }
+
+        Message message = messageSender.sendPile(chatId, cards, caption, keyboardMarkup);
+        ids[pile - 1] = message != null && message.getMessageId() != null ? message.getMessageId() : 0;
+        if (message == null && keyboardMarkup != null) {
+            log.debug("Pile {} for chat ID {} has no editable message, sending the keyboard separately", pile, chatId);
+            messageSender.sendMessageWithKeyboard(chatId, QUESTION, keyboardMarkup);
+        }
+    }
+
+    public void clear(long chatId) {
+        synchronized (messageIds) {
+            messageIds.remove(chatId);
+        }
+    }
+
+    public int size() {
+        synchronized (messageIds) {
+            return messageIds.size();
+        }
+    }
+
+    private int[] messagesFor(long chatId, int round, int pile, int piles) {
+        synchronized (messageIds) {
+            int[] ids = messageIds.get(chatId);
+            if (ids == null || ids.length != piles || (round == 0 && pile == 1)) {
+                ids = new int[piles];
+                messageIds.put(chatId, ids);
+            }
+            return ids;
+        }
+    }
+
+    private static String header(int pile) {
+        return "👆 СТОПКА " + pile + " 👆";
+    }
+
+}
@@ -0,0 +1,47 @@
+package telegram.trickbot.service;
+
+import org.springframework.stereotype.Component;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Draws deck seeds and shuffles decks from them. Seeds come from independent {@link SplittableRandom} streams
+ * striped by thread, so parallel sessions rarely share a lock, and a deck is always shuffled by a generator built
+ * from its seed, so a recorded seed replays the exact deck.
+ */
+@Component
+public class ShuffleService {
+    private final SplittableRandom[] streams;
+    private final int mask;
+
+    public ShuffleService() {
+        SplittableRandom root = new SplittableRandom();
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1);
+        this.streams = new SplittableRandom[stripes];
+        for (int i = 0; i < stripes; i++) {
+            streams[i] = root.split();
+        }
+        this.mask = stripes - 1;
+    }
+
+    public long nextSeed() {
+        SplittableRandom stream = streams[(int) Thread.currentThread().threadId() & mask];
+        synchronized (stream) {
+            return stream.nextLong();
+        }
+    }
+
+    public void shuffle(byte[] deck, long seed) {
+        shuffle(deck, new SplittableRandom(seed));
+    }
+
+    public static void shuffle(byte[] deck, RandomGenerator random) {
+        for (int i = deck.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte card = deck[i];
+            deck[i] = deck[j];
+            deck[j] = card;
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package telegram.trickbot.service;
+
+class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    TokenBucket(double capacity, double tokensPerSecond, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    synchronized long reserve(long now) {
+        refill(now);
+        tokens -= 1;
+        long wait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        return Math.max(wait, pausedUntil - now);
+    }
+
+    synchronized void pauseUntil(long until) {
+        pausedUntil = Math.max(pausedUntil, until);
+    }
+
+    synchronized boolean isIdle(long now) {
+        refill(now);
+        return tokens >= capacity && pausedUntil <= now;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+
+}
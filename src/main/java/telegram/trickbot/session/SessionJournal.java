@@ -0,0 +1,409 @@
+package telegram.trickbot.session;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import telegram.trickbot.service.DeckManager;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of trick progress, off unless {@code journal.file} names a file. Callback threads encode each
+ * record on their own and hand it to a lock-free queue; a background thread drains the queue, writes and fsyncs it as
+ * one group every commit interval, so a crash loses at most that window. On startup the journal is replayed into
+ * {@link SessionManager} and rewritten as one snapshot per game.
+ */
+@Slf4j
+@Component
+public class SessionJournal {
+    private static final int MAGIC = 0x54424A31;
+    private static final byte SHUFFLE = 1;
+    private static final byte CHOICE = 2;
+    private static final byte FINISH = 3;
+    private static final byte SNAPSHOT = 4;
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int BODY_BYTES = Byte.BYTES + Long.BYTES * 2 + Integer.BYTES + Byte.BYTES + Short.BYTES;
+
+    private final Path file;
+    private final long maxAgeMillis;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService flusher;
+    private final Object writeLock = new Object();
+    private final LongAdder failures = new LongAdder();
+    private ByteBuffer batch = ByteBuffer.allocate(BUFFER_BYTES);
+    private FileChannel channel;
+
+    private SessionJournal() {
+        this.file = null;
+        this.maxAgeMillis = 0;
+        this.flusher = null;
+    }
+
+    @Autowired
+    public SessionJournal(SessionManager sessionManager, DeckManager deckManager,
+                          @Value("${journal.file:}") String file,
+                          @Value("${journal.commit-interval:PT0.02S}") Duration commitInterval,
+                          @Value("${journal.compact-interval:PT10M}") Duration compactInterval,
+                          @Value("${session.idle-timeout:PT30M}") Duration maxAge) {
+        this.file = file.isBlank() ? null : Path.of(file);
+        this.maxAgeMillis = maxAge.toMillis();
+        if (this.file == null) {
+            this.flusher = null;
+            return;
+        }
+
+        replay(sessionManager, deckManager.getCards().size());
+        compact();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long commit = Math.max(1, commitInterval.toMillis());
+        flusher.scheduleWithFixedDelay(this::flush, commit, commit, TimeUnit.MILLISECONDS);
+        long compact = compactInterval.toMillis();
+        if (compact > 0) {
+            flusher.scheduleWithFixedDelay(this::compact, compact, compact, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static SessionJournal disabled() {
+        return new SessionJournal();
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    public void recordShuffle(long chatId, byte[] deck) {
+        recordShuffle(chatId, null, deck);
+    }
+
+    public void recordShuffle(long chatId, String deckId, byte[] deck) {
+        append(SHUFFLE, chatId, 0, 0, deck, deckId);
+    }
+
+    public void recordChoice(long chatId, int pile, int step, byte[] deck) {
+        append(CHOICE, chatId, step, pile, deck, null);
+    }
+
+    public void recordFinish(long chatId) {
+        append(FINISH, chatId, 0, 0, null, null);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public void flush() {
+        synchronized (writeLock) {
+            if (file == null) {
+                return;
+            }
+
+            try {
+                if (drain()) {
+                    write(batch);
+                }
+            }
+            catch (IOException e) {
+                failures.increment();
+                log.error("Error writing session journal: {}", e.getMessage());
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Records appended since the last flush are covered by the snapshot, so they are only written to the current
+    // file when the rewrite fails. The current channel stays open until the compacted file has replaced it.
+    public void compact() {
+        if (file == null) {
+            return;
+        }
+
+        synchronized (writeLock) {
+            drain();
+            long cutoff = System.currentTimeMillis() - maxAgeMillis;
+            entries.values().removeIf(entry -> entry.updatedAt() < cutoff);
+            Map<Long, Entry> snapshot = new HashMap<>(entries);
+
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            boolean replaced = false;
+            try {
+                int capacity = Integer.BYTES + snapshot.values().stream()
+                        .mapToInt(entry -> HEADER_BYTES + BODY_BYTES + entry.deck().length
+                                + deckIdBytes(entry.deckId()).length)
+                        .sum();
+                ByteBuffer buffer = ByteBuffer.allocate(capacity);
+                buffer.putInt(MAGIC);
+                snapshot.forEach((chatId, entry) -> encode(buffer, SNAPSHOT, chatId, entry.updatedAt(), entry.step(),
+                        0, entry.deck(), entry.deckId()));
+                buffer.flip();
+                try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    out.force(true);
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                replaced = true;
+                replaceChannel(openChannel());
+                log.info("Compacted session journal to {} games", snapshot.size());
+            }
+            catch (IOException e) {
+                failures.increment();
+                log.error("Error compacting session journal, appending to the current file: {}", e.getMessage());
+                try {
+                    if (replaced) {
+                        replaceChannel(null);
+                    }
+                    else {
+                        write(batch);
+                    }
+                }
+                catch (IOException writeException) {
+                    log.error("Error writing session journal: {}", writeException.getMessage());
+                }
+            }
+            finally {
+                batch.clear();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (writeLock) {
+            flush();
+            try {
+                replaceChannel(null);
+            }
+            catch (IOException e) {
+                log.error("Error closing session journal: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void append(byte type, long chatId, int step, int pile, byte[] deck, String deckId) {
+        if (file == null) {
+            return;
+        }
+
+        int length = HEADER_BYTES + BODY_BYTES + (deck != null ? deck.length : 0) + deckIdBytes(deckId).length;
+        ByteBuffer record = ByteBuffer.allocate(length);
+        encode(record, type, chatId, System.currentTimeMillis(), step, pile, deck, deckId);
+        pending.add(record.array());
+    }
+
+    // Moves the queued records into the batch, flipped for writing, and applies them to the per-game state in the
+    // order each chat's thread appended them. Returns whether anything was queued.
+    private boolean drain() {
+        byte[] record;
+        boolean drained = false;
+        while ((record = pending.poll()) != null) {
+            if (batch.remaining() < record.length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(batch.capacity() * 2, batch.position() + record.length));
+                batch.flip();
+                grown.put(batch);
+                batch = grown;
+            }
+            batch.put(record);
+            apply(ByteBuffer.wrap(record, HEADER_BYTES, record.length - HEADER_BYTES));
+            drained = true;
+        }
+        batch.flip();
+        return drained;
+    }
+
+    private void apply(byte type, long chatId, long time, int step, byte[] deck, String deckId) {
+        if (type == FINISH) {
+            entries.remove(chatId);
+            return;
+        }
+
+        Entry previous = entries.get(chatId);
+        if (type == CHOICE && previous != null) {
+            deckId = previous.deckId();
+        }
+        entries.put(chatId, new Entry(deck, step, time, deckId));
+    }
+
+    private void replay(SessionManager sessionManager, int deckSize) {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        long records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.error("{} is not a session journal, ignoring it", file);
+                return;
+            }
+            while (readRecord(in)) {
+                records++;
+            }
+        }
+        catch (EOFException e) {
+            log.debug("Session journal ends after {} records", records);
+        }
+        catch (IOException e) {
+            log.error("Error reading session journal: {}", e.getMessage());
+        }
+
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        entries.values().removeIf(entry -> entry.updatedAt() < cutoff || entry.deck().length != deckSize);
+        entries.forEach((chatId, entry) -> {
+            TrickSession session = sessionManager.getSession(chatId);
+            session.restore(entry.deck(), entry.step());
+            session.setDeckId(entry.deckId());
+        });
+        log.info("Replayed {} journal records, restored {} games in progress", records, entries.size());
+    }
+
+    private boolean readRecord(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        }
+        catch (EOFException e) {
+            return false;
+        }
+        int checksum = in.readInt();
+        if (length < BODY_BYTES || length > BODY_BYTES + Short.MAX_VALUE * 2) {
+            log.warn("Corrupt session journal record length {}, dropping the tail", length);
+            return false;
+        }
+
+        byte[] body = new byte[length];
+        in.readFully(body);
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            log.warn("Torn session journal record, dropping the tail");
+            return false;
+        }
+
+        apply(ByteBuffer.wrap(body));
+        return true;
+    }
+
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        long chatId = record.getLong();
+        long time = record.getLong();
+        int step = record.getInt();
+        record.get();
+        byte[] deck = new byte[record.getShort()];
+        record.get(deck);
+        String deckId = record.hasRemaining()
+                ? new String(record.array(), record.position(), record.remaining(), StandardCharsets.UTF_8)
+                : null;
+        apply(type, chatId, time, step, deck, deckId);
+    }
+
+    // The deck ID, when present, trails the deck so records written before themed decks still replay.
+    private static void encode(ByteBuffer buffer, byte type, long chatId, long time, int step, int pile, byte[] deck,
+                               String deckId) {
+        int deckLength = deck != null ? deck.length : 0;
+        byte[] id = deckIdBytes(deckId);
+        int start = buffer.position();
+        buffer.putInt(BODY_BYTES + deckLength + id.length).putInt(0);
+        int bodyStart = buffer.position();
+        buffer.put(type).putLong(chatId).putLong(time).putInt(step).put((byte) pile).putShort((short) deckLength);
+        if (deck != null) {
+            buffer.put(deck);
+        }
+        buffer.put(id);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), buffer.arrayOffset() + bodyStart, buffer.position() - bodyStart);
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    private static byte[] deckIdBytes(String deckId) {
+        return deckId != null ? deckId.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    // A channel lost to a failed compaction or write is reopened on the next flush, so journaling resumes.
+    private void write(ByteBuffer batch) throws IOException {
+        FileChannel current;
+        synchronized (this) {
+            current = channel;
+        }
+        if (current == null) {
+            current = openChannel();
+            synchronized (this) {
+                channel = current;
+            }
+        }
+
+        try {
+            while (batch.hasRemaining()) {
+                current.write(batch);
+            }
+            current.force(false);
+        }
+        catch (IOException e) {
+            replaceChannel(null);
+            throw e;
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (!Files.exists(file)) {
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIC));
+            }
+        }
+        return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void replaceChannel(FileChannel replacement) throws IOException {
+        FileChannel previous;
+        synchronized (this) {
+            previous = channel;
+            channel = replacement;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private record Entry(byte[] deck, int step, long updatedAt, String deckId) {
+    }
+
+}
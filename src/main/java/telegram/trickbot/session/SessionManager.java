@@ -0,0 +1,71 @@
+package telegram.trickbot.session;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Component
+public class SessionManager {
+    private final ConcurrentMap<Long, TrickSession> sessions = new ConcurrentHashMap<>();
+    private final long idleTimeoutMillis;
+    private final ScheduledExecutorService evictor;
+
+    public SessionManager(@Value("${session.idle-timeout:PT30M}") Duration idleTimeout,
+                          @Value("${session.eviction-interval:PT1M}") Duration evictionInterval) {
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = evictionInterval.toMillis();
+        evictor.scheduleWithFixedDelay(this::evictIdleSessions, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public TrickSession getSession(long chatId) {
+        TrickSession session = sessions.computeIfAbsent(chatId, TrickSession::new);
+        session.touch();
+        return session;
+    }
+
+    public Optional<TrickSession> findSession(long chatId) {
+        return Optional.ofNullable(sessions.get(chatId));
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public int evictIdleSessions() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        AtomicInteger evicted = new AtomicInteger();
+        sessions.keySet().forEach(chatId -> sessions.computeIfPresent(chatId, (id, session) -> {
+            if (session.isIdleSince(cutoff)) {
+                evicted.incrementAndGet();
+                return null;
+            }
+            return session;
+        }));
+
+        if (evicted.get() > 0) {
+            log.info("Evicted idle sessions: {}, active sessions: {}", evicted.get(), sessions.size());
+        }
+        return evicted.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+    }
+
+}
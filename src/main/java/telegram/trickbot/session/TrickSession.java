@@ -0,0 +1,65 @@
+package telegram.trickbot.session;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+public class TrickSession {
+    private final long chatId;
+    private byte[] deck;
+    private int step;
+    private long startedAt;
+    private long seed;
+    @Setter
+    private String userName;
+    @Setter
+    private String deckId;
+    private volatile long lastAccess;
+
+    public TrickSession(long chatId) {
+        this.chatId = chatId;
+        touch();
+    }
+
+    public void start(byte[] deck) {
+        start(deck, 0);
+    }
+
+    public void start(byte[] deck, long seed) {
+        this.deck = deck;
+        this.seed = seed;
+        this.step = 0;
+        this.startedAt = System.nanoTime();
+    }
+
+    public void restore(byte[] deck, int step) {
+        this.deck = deck;
+        this.seed = 0;
+        this.step = step;
+        this.startedAt = 0;
+    }
+
+    public int nextStep() {
+        return ++step;
+    }
+
+    public void finish() {
+        this.deck = null;
+        this.seed = 0;
+        this.step = 0;
+        this.startedAt = 0;
+    }
+
+    public boolean isStarted() {
+        return deck != null;
+    }
+
+    public void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    public boolean isIdleSince(long cutoff) {
+        return lastAccess < cutoff;
+    }
+
+}
@@ -0,0 +1,17 @@
+package telegram.trickbot.session;
+
+import java.util.Arrays;
+
+public record TrickState(long seed, byte[] choices) {
+
+    public int round() {
+        return choices.length;
+    }
+
+    public TrickState choose(int pile) {
+        byte[] next = Arrays.copyOf(choices, choices.length + 1);
+        next[choices.length] = (byte) pile;
+        return new TrickState(seed, next);
+    }
+
+}
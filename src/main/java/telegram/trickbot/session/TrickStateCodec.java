@@ -0,0 +1,121 @@
+package telegram.trickbot.session;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import telegram.trickbot.service.DeckLayout;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+@Slf4j
+@Component
+public class TrickStateCodec {
+    public static final String PREFIX = "t:";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SEED_BYTES = Long.BYTES;
+    private static final int SIGNATURE_BYTES = 12;
+    private static final int MAX_CALLBACK_DATA = 64;
+    private final Mac prototype;
+
+    public TrickStateCodec(@Value("${trick.state-secret:}") String secret) {
+        byte[] key;
+        if (secret.isBlank()) {
+            log.warn("trick.state-secret is not set, using a random key: callbacks will not survive restarts");
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        }
+        else {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        }
+
+        try {
+            prototype = Mac.getInstance(ALGORITHM);
+            prototype.init(new SecretKeySpec(key, ALGORITHM));
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + ALGORITHM, e);
+        }
+    }
+
+    public static boolean isEncoded(String callbackData) {
+        return callbackData.startsWith(PREFIX);
+    }
+
+    public String encode(long chatId, DeckLayout layout, TrickState state) {
+        byte[] payload = ByteBuffer.allocate(SEED_BYTES + state.choices().length)
+                .putLong(state.seed())
+                .put(state.choices())
+                .array();
+        byte[] signature = sign(chatId, layout, payload);
+
+        byte[] data = Arrays.copyOf(payload, payload.length + SIGNATURE_BYTES);
+        System.arraycopy(signature, 0, data, payload.length, SIGNATURE_BYTES);
+        String callbackData = PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(data);
+
+        if (callbackData.length() > MAX_CALLBACK_DATA) {
+            throw new IllegalStateException("Callback data is too long: " + callbackData.length());
+        }
+        return callbackData;
+    }
+
+    public Optional<TrickState> decode(long chatId, DeckLayout layout, String callbackData) {
+        if (!isEncoded(callbackData)) {
+            return Optional.empty();
+        }
+
+        byte[] data;
+        try {
+            data = Base64.getUrlDecoder().decode(callbackData.substring(PREFIX.length()));
+        }
+        catch (IllegalArgumentException e) {
+            log.warn("Malformed trick state for chat ID {}: {}", chatId, e.getMessage());
+            return Optional.empty();
+        }
+        if (data.length <= SEED_BYTES + SIGNATURE_BYTES) {
+            log.warn("Truncated trick state for chat ID {}", chatId);
+            return Optional.empty();
+        }
+
+        byte[] payload = Arrays.copyOf(data, data.length - SIGNATURE_BYTES);
+        byte[] signature = Arrays.copyOfRange(data, payload.length, data.length);
+        if (!MessageDigest.isEqual(signature, Arrays.copyOf(sign(chatId, layout, payload), SIGNATURE_BYTES))) {
+            log.warn("Invalid trick state signature for chat ID {}", chatId);
+            return Optional.empty();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        long seed = buffer.getLong();
+        byte[] choices = new byte[buffer.remaining()];
+        buffer.get(choices);
+        for (byte choice : choices) {
+            if (!layout.isValidPile(choice)) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(new TrickState(seed, choices));
+    }
+
+    private byte[] sign(long chatId, DeckLayout layout, byte[] payload) {
+        try {
+            Mac mac = (Mac) prototype.clone();
+            mac.update(ByteBuffer.allocate(Long.BYTES + 2 * Integer.BYTES)
+                    .putLong(chatId)
+                    .putInt(layout.getPiles())
+                    .putInt(layout.getPileSize())
+                    .array());
+            return mac.doFinal(payload);
+        }
+        catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("Unable to clone " + ALGORITHM, e);
+        }
+    }
+
+}
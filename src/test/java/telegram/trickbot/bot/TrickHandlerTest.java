@@ -0,0 +1,429 @@
+package telegram.trickbot.bot;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.telegram.telegrambots.meta.api.objects.*;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import telegram.trickbot.logging.TrickEvents;
+import telegram.trickbot.metrics.BotMetrics;
+import telegram.trickbot.service.DeckCatalog;
+import telegram.trickbot.service.DeckLayout;
+import telegram.trickbot.service.DeckManager;
+import telegram.trickbot.service.MessagesManager;
+import telegram.trickbot.service.OutboundPipeline;
+import telegram.trickbot.service.OutboundRateLimiter;
+import telegram.trickbot.service.RoundComposer;
+import telegram.trickbot.session.SessionJournal;
+import telegram.trickbot.session.SessionManager;
+import telegram.trickbot.session.TrickSession;
+import telegram.trickbot.session.TrickState;
+import telegram.trickbot.session.TrickStateCodec;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import static org.mockito.AdditionalMatchers.and;
+import static org.mockito.Mockito.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrickHandlerTest {
+    private static final long TIMEOUT = 3000;
+
+    @Mock
+    private DeckManager deckManager;
+
+    @Mock
+    private MessagesManager messagesManager;
+
+    private SessionManager sessionManager;
+    private BotMetrics metrics;
+    private TrickHandler trickHandler;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        sessionManager = new SessionManager(Duration.ofMinutes(30), Duration.ofMinutes(1));
+        metrics = new BotMetrics();
+        trickHandler = new TrickHandler(deckManager, DeckCatalog.empty(), sessionManager, SessionJournal.disabled(),
+                new OutboundPipeline(2), messagesManager, new RoundComposer(messagesManager), new TrickStateCodec("secret"), metrics,
+                new TrickEvents(), false);
+        when(deckManager.newDeck(anyLong())).thenAnswer(invocation -> new byte[21]);
+        when(deckManager.getLayout()).thenReturn(DeckLayout.of(3, 7));
+        when(messagesManager.createInlineKeyboard(anyList())).thenReturn(new InlineKeyboardMarkup());
+        when(messagesManager.buildInlineKeyboard(anyList())).thenReturn(new InlineKeyboardMarkup());
+    }
+
+    @Test
+    void testHandleUpdate_TextMessage_Start() {
+        Update update = mockUpdateWithText("/start", 123L, "TestUser");
+
+        trickHandler.handleUpdate(update);
+
+        verify(messagesManager, timeout(TIMEOUT)).sendWelcomeMessage(123L, "TestUser", 3);
+    }
+
+    @Test
+    void testHandleUpdate_TextMessage_NonStart() {
+        Update update = mockUpdateWithText("Hello world", 123L, "TestUser");
+
+        trickHandler.handleUpdate(update);
+
+        verify(messagesManager, never()).sendWelcomeMessage(anyLong(), anyString(), anyInt());
+    }
+
+    @Test
+    void testHandleUpdate_Callback_StartTrick() {
+        Update update = mockUpdateWithCallback("start_trick", 123L);
+
+        trickHandler.handleUpdate(update);
+
+        verify(deckManager).newDeck(anyLong());
+    }
+
+    @Test
+    void testHandleUpdate_Callback_ChoosePile() {
+        startedSession(123L, 0);
+        Update update = mockUpdateWithCallback("2", 123L);
+
+        trickHandler.handleUpdate(update);
+
+        verify(deckManager).updateDeck(any(byte[].class), eq(2));
+    }
+
+    @Test
+    void testHandleUpdate_Callback_ChoosePile_WithoutTrick() {
+        Update update = mockUpdateWithCallback("2", 123L);
+
+        trickHandler.handleUpdate(update);
+
+        verify(deckManager, never()).updateDeck(any(byte[].class), anyInt());
+        verify(messagesManager, timeout(TIMEOUT)).sendTextMessage(eq(123L), contains("начните заново"));
+    }
+
+    @Test
+    void testHandleUpdate_Callback_AnswersQueryFirst() {
+        startedSession(123L, 0);
+
+        trickHandler.handleUpdate(mockUpdateWithCallback("0:2", 123L));
+
+        InOrder inOrder = inOrder(messagesManager, deckManager);
+        inOrder.verify(messagesManager).answerCallbackQuery("query-0:2");
+        inOrder.verify(deckManager).updateDeck(any(byte[].class), eq(2));
+    }
+
+    @Test
+    void testHandleButtonPress_DropsStaleRound() {
+        startedSession(123L, 1);
+
+        trickHandler.handleButtonPress(123L, "0:2");
+        trickHandler.handleButtonPress(123L, "1:3");
+        trickHandler.handleButtonPress(123L, "1:3");
+
+        verify(deckManager, times(1)).updateDeck(any(byte[].class), anyInt());
+        verify(deckManager).updateDeck(any(byte[].class), eq(3));
+        assertThat(sessionManager.getSession(123L).getStep()).isEqualTo(2);
+    }
+
+    @Test
+    void testHandleButtonPress_IgnoresMalformedData() {
+        startedSession(123L, 0);
+
+        trickHandler.handleButtonPress(123L, "pile");
+        trickHandler.handleButtonPress(123L, "0:9");
+
+        verify(deckManager, never()).updateDeck(any(byte[].class), anyInt());
+        assertThat(sessionManager.getSession(123L).getStep()).isZero();
+    }
+
+    @Test
+    void testStartTrick() {
+        when(deckManager.nextSeed()).thenReturn(77L);
+
+        trickHandler.startTrick(321L);
+
+        verify(deckManager).newDeck(77L);
+        assertThat(sessionManager.getSession(321L).isStarted()).isTrue();
+        assertThat(sessionManager.getSession(321L).getSeed()).isEqualTo(77L);
+    }
+
+    @Test
+    void testSessionsAreIsolatedPerChat() {
+        trickHandler.startTrick(1L);
+        trickHandler.startTrick(2L);
+        trickHandler.handleButtonPress(1L, "1");
+
+        assertThat(sessionManager.getSession(1L).getStep()).isEqualTo(1);
+        assertThat(sessionManager.getSession(2L).getStep()).isZero();
+        assertThat(sessionManager.getSession(1L).getDeck()).isNotSameAs(sessionManager.getSession(2L).getDeck());
+    }
+
+    @Test
+    void testPerformTrick_FivePiles() {
+        when(deckManager.getLayout()).thenReturn(DeckLayout.of(5, 5));
+
+        trickHandler.performTrick(startedSession(123L, 0));
+
+        verify(messagesManager, timeout(TIMEOUT)).sendPile(eq(123L), anyList(), contains("СТОПКА 5"), notNull());
+        verify(messagesManager, times(5)).sendPile(eq(123L), anyList(), anyString(), any());
+        verify(messagesManager).createInlineKeyboard(List.of("0:1", "0:2", "0:3", "0:4", "0:5"));
+    }
+
+    @Test
+    void testPerformTrick() {
+        givenPileMessages(10, 11, 12);
+
+        trickHandler.performTrick(startedSession(123L, 0));
+
+        InOrder inOrder = inOrder(messagesManager);
+        inOrder.verify(messagesManager, timeout(TIMEOUT)).sendPile(eq(123L), anyList(), contains("СТОПКА 1"), isNull());
+        inOrder.verify(messagesManager, timeout(TIMEOUT)).sendPile(eq(123L), anyList(), contains("СТОПКА 2"), isNull());
+        inOrder.verify(messagesManager, timeout(TIMEOUT))
+                .sendPile(eq(123L), anyList(), and(contains("СТОПКА 3"), contains("В какой стопке")), notNull());
+        verify(messagesManager, never()).sendTextMessage(anyLong(), anyString());
+        verify(messagesManager, never()).sendMessageWithKeyboard(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void testPerformTrick_LaterRoundsEditPilesInPlace() {
+        givenPileMessages(10, 11, 12);
+        when(messagesManager.editPile(anyLong(), anyInt(), anyList(), anyString(), any())).thenReturn(true);
+        startedSession(123L, 0);
+
+        trickHandler.performTrick(sessionManager.getSession(123L));
+        verify(messagesManager, timeout(TIMEOUT)).sendPile(eq(123L), anyList(), contains("СТОПКА 3"), notNull());
+        trickHandler.handleButtonPress(123L, "2");
+
+        verify(messagesManager, timeout(TIMEOUT)).editPile(eq(123L), eq(12), anyList(), contains("В какой стопке"), notNull());
+        verify(messagesManager).editPile(eq(123L), eq(10), anyList(), contains("СТОПКА 1"), isNull());
+        verify(messagesManager).editPile(eq(123L), eq(11), anyList(), contains("СТОПКА 2"), isNull());
+        verify(messagesManager, times(3)).sendPile(eq(123L), anyList(), anyString(), any());
+    }
+
+    @Test
+    void testPerformTrick_RateLimitedEditEndsTheTrick() {
+        givenPileMessages(10, 11, 12);
+        when(messagesManager.editPile(anyLong(), anyInt(), anyList(), anyString(), any()))
+                .thenThrow(new OutboundRateLimiter.RateLimitedException("429", null));
+        startedSession(123L, 0);
+
+        trickHandler.performTrick(sessionManager.getSession(123L));
+        verify(messagesManager, timeout(TIMEOUT)).sendPile(eq(123L), anyList(), contains("СТОПКА 3"), notNull());
+        trickHandler.handleButtonPress(123L, "2");
+
+        verify(messagesManager, timeout(TIMEOUT)).sendTextMessage(eq(123L), contains("начните заново"));
+        verify(messagesManager, times(1)).editPile(anyLong(), anyInt(), anyList(), anyString(), any());
+        assertThat(sessionManager.getSession(123L).isStarted()).isFalse();
+    }
+
+    @Test
+    void testPerformTrick_SendsKeyboardSeparatelyWithoutPileMessage() {
+        trickHandler.performTrick(startedSession(123L, 0));
+
+        verify(messagesManager, timeout(TIMEOUT)).sendMessageWithKeyboard(eq(123L), contains("В какой стопке"), any());
+    }
+
+    @Test
+    void testHandleButtonPress_PerformMoreTricks() {
+        startedSession(456L, 0);
+        trickHandler.handleButtonPress(456L, "1"); // step 1
+        trickHandler.handleButtonPress(456L, "2"); // step 2
+
+        verify(deckManager, times(2)).updateDeck(any(byte[].class), anyInt());
+        verify(messagesManager, timeout(TIMEOUT).atLeastOnce()).sendPile(eq(456L), anyList(), anyString(), any());
+    }
+
+    @Test
+    void testHandleButtonPress_ShowEleventhCard_AfterThreeSteps() {
+        startedSession(456L, 2); // чтобы сразу показать карточку
+        when(deckManager.getSelectedCard(any(byte[].class), any())).thenReturn("photo_url");
+
+        trickHandler.handleButtonPress(456L, "3"); // третий шаг
+
+        verify(deckManager, times(1)).updateDeck(any(byte[].class), anyInt());
+        verify(messagesManager, timeout(TIMEOUT)).sendPhoto(eq(456L), eq("photo_url"), contains("Компания"));
+        verify(messagesManager, timeout(TIMEOUT)).sendWelcomeMessage(eq(456L), any(), eq(3));
+        assertThat(metrics.scrape())
+                .contains("trickbot_trick_step_seconds_count{round=\"3\"} 1")
+                .contains("trickbot_trick_seconds_count 1");
+    }
+
+    @Test
+    void testShowEleventhCard() {
+        when(deckManager.getSelectedCard(any(byte[].class), any())).thenReturn("photo_url");
+
+        startedSession(123L, 2);
+
+        trickHandler.handleButtonPress(123L, "1");
+
+        verify(deckManager).getSelectedCard(any(byte[].class), any());
+    }
+
+    @Test
+    void testDuplicateCallbackIsAnsweredWithoutReplaying() {
+        startedSession(123L, 0);
+
+        trickHandler.handleDuplicateUpdate(mockUpdateWithCallback("0:2", 123L));
+
+        verify(messagesManager).answerCallbackQuery("query-0:2");
+        verify(deckManager, never()).updateDeck(any(byte[].class), anyInt());
+    }
+
+    @Test
+    void testShedStartGetsBusyReply() {
+        trickHandler.handleShedUpdate(mockUpdateWithText("/start", 123L, "TestUser"));
+        trickHandler.handleShedUpdate(mockUpdateWithText("hello", 456L, "TestUser"));
+
+        verify(messagesManager, timeout(TIMEOUT)).sendTextMessage(eq(123L), contains("попробуйте /start"));
+        verify(messagesManager, never()).sendTextMessage(eq(456L), anyString());
+        verify(messagesManager, never()).sendWelcomeMessage(anyLong(), anyString(), anyInt());
+    }
+
+    @Test
+    void testShedStartButtonGetsBusyNotice() {
+        trickHandler.handleShedUpdate(mockUpdateWithCallback(TrickHandler.START_TRICK, 123L));
+
+        verify(messagesManager, timeout(TIMEOUT)).answerCallbackQuery(eq("query-start_trick"), contains("попробуйте"));
+        verify(deckManager, never()).newDeck(anyLong());
+    }
+
+    @Test
+    void testShedButtonWithoutChatOnlyAnswersTheCallback() {
+        Update update = new Update();
+        CallbackQuery callbackQuery = new CallbackQuery();
+        callbackQuery.setId("query-inline");
+        callbackQuery.setData(TrickHandler.START_TRICK);
+        update.setCallbackQuery(callbackQuery);
+
+        trickHandler.handleShedUpdate(update);
+
+        verify(messagesManager).answerCallbackQuery(eq("query-inline"), contains("попробуйте"));
+        verify(messagesManager, never()).sendTextMessage(anyLong(), anyString());
+    }
+
+    @Test
+    void testDeckCommand_SelectedDeckIsUsedForPilesAndReveal() {
+        DeckCatalog catalog = mock(DeckCatalog.class);
+        List<String> cards = List.of("decks/cities/1.jpg", "decks/cities/2.jpg");
+        DeckCatalog.DeckInfo cities = new DeckCatalog.DeckInfo("cities", "Города", cards, 100);
+        when(catalog.getDecks()).thenReturn(List.of(cities));
+        when(catalog.findDeck("cities")).thenReturn(Optional.of(cities));
+        TrickHandler handler = new TrickHandler(deckManager, catalog, sessionManager, SessionJournal.disabled(),
+                new OutboundPipeline(2), messagesManager, new RoundComposer(messagesManager),
+                new TrickStateCodec("secret"), metrics, new TrickEvents(), false);
+
+        handler.handleUpdate(mockUpdateWithText("/deck cities", 123L, "TestUser"));
+        handler.handleUpdate(mockUpdateWithCallback("start_trick", 123L));
+
+        verify(messagesManager, timeout(TIMEOUT)).sendTextMessage(eq(123L), contains("Города"));
+        verify(deckManager, timeout(TIMEOUT)).getPile(any(byte[].class), eq(1), eq(cards));
+        assertThat(sessionManager.getSession(123L).getDeckId()).isEqualTo("cities");
+    }
+
+    @Test
+    void testDeckCommand_UnknownDeckKeepsCurrentDeck() {
+        DeckCatalog catalog = mock(DeckCatalog.class);
+        DeckCatalog.DeckInfo cities = new DeckCatalog.DeckInfo("cities", "Города", List.of("1.jpg"), 100);
+        when(catalog.getDecks()).thenReturn(List.of(cities));
+        when(catalog.findDeck(any())).thenReturn(Optional.empty());
+        TrickHandler handler = new TrickHandler(deckManager, catalog, sessionManager, SessionJournal.disabled(),
+                new OutboundPipeline(2), messagesManager, new RoundComposer(messagesManager),
+                new TrickStateCodec("secret"), metrics, new TrickEvents(), false);
+
+        handler.handleUpdate(mockUpdateWithText("/deck planets", 123L, "TestUser"));
+
+        verify(messagesManager, timeout(TIMEOUT)).sendTextMessage(eq(123L), contains("не найдена"));
+        assertThat(sessionManager.getSession(123L).getDeckId()).isNull();
+    }
+
+    @Test
+    void testStatelessTrick_RevealsGuessedCardWithoutSessions() {
+        DeckManager realDeckManager = new DeckManager("path/", ".jpg");
+        TrickStateCodec codec = new TrickStateCodec("secret");
+        TrickHandler statelessHandler = new TrickHandler(realDeckManager, DeckCatalog.empty(), sessionManager,
+                SessionJournal.disabled(),
+                new OutboundPipeline(2), messagesManager, new RoundComposer(messagesManager), codec, metrics,
+                new TrickEvents(), true);
+        DeckLayout layout = realDeckManager.getLayout();
+        ArgumentCaptor<List<String>> keyboard = ArgumentCaptor.captor();
+        int guessedCard = 5;
+
+        statelessHandler.handleUpdate(mockUpdateWithCallback("start_trick", 123L));
+        for (int round = 1; round <= layout.getRounds(); round++) {
+            verify(messagesManager, times(round)).buildInlineKeyboard(keyboard.capture());
+            List<String> buttons = keyboard.getValue();
+            TrickState state = codec.decode(123L, layout, buttons.get(0)).orElseThrow();
+            byte[] deck = realDeckManager.replayDeck(state.seed(), Arrays.copyOf(state.choices(), state.round() - 1));
+            int pile = indexOf(deck, guessedCard) / layout.getPileSize();
+
+            statelessHandler.handleUpdate(mockUpdateWithCallback(buttons.get(pile), 123L));
+        }
+
+        verify(messagesManager, timeout(TIMEOUT * 3)).sendPhoto(eq(123L), eq(realDeckManager.getCards().get(guessedCard)), any());
+        assertThat(sessionManager.size()).isZero();
+    }
+
+    @Test
+    void testStatelessTrick_RejectsForgedState() {
+        TrickStateCodec otherCodec = new TrickStateCodec("other-secret");
+        String forged = otherCodec.encode(123L, DeckLayout.of(3, 7), new TrickState(42L, new byte[]{1, 2, 3}));
+
+        trickHandler.handleUpdate(mockUpdateWithCallback(forged, 123L));
+
+        verify(deckManager, never()).replayDeck(anyLong(), any());
+        verify(messagesManager, never()).sendPhoto(anyLong(), any(), any());
+    }
+
+    private void givenPileMessages(int... messageIds) {
+        Message[] messages = new Message[messageIds.length];
+        for (int i = 0; i < messageIds.length; i++) {
+            messages[i] = new Message();
+            messages[i].setMessageId(messageIds[i]);
+        }
+        when(messagesManager.sendPile(anyLong(), anyList(), anyString(), any()))
+                .thenReturn(messages[0], Arrays.copyOfRange(messages, 1, messages.length));
+    }
+
+    private int indexOf(byte[] deck, int card) {
+        for (int i = 0; i < deck.length; i++) {
+            if (deck[i] == card) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Card not found: " + card);
+    }
+
+    private TrickSession startedSession(long chatId, int step) {
+        TrickSession session = sessionManager.getSession(chatId);
+        session.start(new byte[21]);
+        for (int i = 0; i < step; i++) {
+            session.nextStep();
+        }
+        return session;
+    }
+
+    private Update mockUpdateWithText(String text, long chatId, String username) {
+        Update update = new Update();
+        Message message = mock(Message.class);
+        when(message.hasText()).thenReturn(true);
+        when(message.getText()).thenReturn(text);
+        when(message.getChatId()).thenReturn(chatId);
+        User user = new User();
+        user.setFirstName(username);
+        when(message.getFrom()).thenReturn(user);
+        update.setMessage(message);
+        return update;
+    }
+
+    private Update mockUpdateWithCallback(String data, long chatId) {
+        Update update = new Update();
+        CallbackQuery callbackQuery = new CallbackQuery();
+        Message message = mock(Message.class);
+        when(message.getChatId()).thenReturn(chatId);
+        callbackQuery.setId("query-" + data);
+        callbackQuery.setData(data);
+        callbackQuery.setMessage(message);
+        update.setCallbackQuery(callbackQuery);
+        return update;
+    }
+}
@@ -0,0 +1,75 @@
+package telegram.trickbot.bot;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import java.time.Duration;
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateDeduplicatorTest {
+    private final UpdateDeduplicator deduplicator = new UpdateDeduplicator();
+
+    @Test
+    void testRedeliveredUpdateIsDuplicate() {
+        assertTrue(deduplicator.firstSeen(callback(1, "a", 10, "0:1")));
+        assertFalse(deduplicator.firstSeen(callback(1, "a", 10, "0:1")));
+        assertEquals(1, deduplicator.getDuplicateCount());
+    }
+
+    @Test
+    void testSameCallbackQueryInAnotherUpdateIsDuplicate() {
+        assertTrue(deduplicator.firstSeen(callback(1, "a", 10, "0:1")));
+        assertFalse(deduplicator.firstSeen(callback(2, "a", 10, "0:1")));
+    }
+
+    @Test
+    void testDoubleTapOnSameButtonIsDuplicate() {
+        assertTrue(deduplicator.firstSeen(callback(1, "a", 10, "0:1")));
+        assertFalse(deduplicator.firstSeen(callback(2, "b", 10, "0:1")));
+        assertTrue(deduplicator.firstSeen(callback(3, "c", 10, "1:1")));
+        assertTrue(deduplicator.firstSeen(callback(4, "d", 11, "0:1")));
+    }
+
+    @Test
+    void testSignedStateIsHandledOnce() {
+        assertTrue(deduplicator.firstSeen(callback(1, "a", 10, "t:state")));
+        assertFalse(deduplicator.firstSeen(callback(2, "b", 12, "t:state")));
+    }
+
+    @Test
+    void testForgetsUpdatesOutsideWindow() throws InterruptedException {
+        UpdateDeduplicator shortWindow = new UpdateDeduplicator(Duration.ofMillis(20), 100);
+        assertTrue(shortWindow.firstSeen(callback(1, "a", 10, "0:1")));
+
+        Thread.sleep(50);
+
+        assertTrue(shortWindow.firstSeen(callback(1, "a", 10, "0:1")));
+    }
+
+    @Test
+    void testKeepsBoundedNumberOfEntries() {
+        UpdateDeduplicator bounded = new UpdateDeduplicator(Duration.ofHours(1), 30);
+
+        for (int i = 0; i < 1000; i++) {
+            bounded.firstSeen(callback(i, "query-" + i, i, "0:1"));
+        }
+
+        assertTrue(bounded.size() <= 33);
+    }
+
+    private Update callback(int updateId, String queryId, int messageId, String data) {
+        Message message = new Message();
+        message.setMessageId(messageId);
+        message.setChat(new Chat(5L, "private"));
+        CallbackQuery callbackQuery = new CallbackQuery();
+        callbackQuery.setId(queryId);
+        callbackQuery.setData(data);
+        callbackQuery.setMessage(message);
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setCallbackQuery(callbackQuery);
+        return update;
+    }
+}
@@ -0,0 +1,189 @@
+package telegram.trickbot.bot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import telegram.trickbot.metrics.BotMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateDispatcherTest {
+    private ExecutorService executor;
+    private UpdateDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        dispatcher = new UpdateDispatcher(executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testTasksForSameChatRunInOrder() throws InterruptedException {
+        List<Integer> handled = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1000);
+
+        IntStream.range(0, 1000).forEach(i -> dispatcher.dispatch(1L, () -> {
+            handled.add(i);
+            done.countDown();
+        }));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(IntStream.range(0, 1000).boxed().toList(), handled);
+    }
+
+    @Test
+    void testSlowChatDoesNotStallOtherChats() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherChatHandled = new CountDownLatch(1);
+
+        dispatcher.dispatch(1L, () -> {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        dispatcher.dispatch(2L, otherChatHandled::countDown);
+
+        assertTrue(otherChatHandled.await(1, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void testMailboxIsRetiredWhenDrained() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(2);
+
+        dispatcher.dispatch(1L, () -> { throw new IllegalStateException("test"); });
+        dispatcher.dispatch(1L, done::countDown);
+        dispatcher.dispatch(2L, done::countDown);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && dispatcher.activeMailboxes() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, dispatcher.activeMailboxes());
+    }
+
+    @Test
+    void testDuplicateUpdateIsHandledOnce() throws InterruptedException {
+        Update update = new Update();
+        update.setUpdateId(42);
+        AtomicInteger handled = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.dispatch(update, ignored -> {
+            handled.incrementAndGet();
+            done.countDown();
+        });
+        dispatcher.dispatch(update, ignored -> handled.incrementAndGet());
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, handled.get());
+        assertEquals(1, dispatcher.getDuplicateCount());
+    }
+
+    @Test
+    void testDuplicateUpdateReachesDuplicateHandler() throws InterruptedException {
+        Update update = callback(43, 1L);
+        AtomicInteger handled = new AtomicInteger();
+        CountDownLatch duplicate = new CountDownLatch(1);
+
+        dispatcher.dispatch(update, ignored -> handled.incrementAndGet(), ignored -> { }, ignored -> duplicate.countDown());
+        dispatcher.dispatch(update, ignored -> handled.incrementAndGet(), ignored -> { }, ignored -> duplicate.countDown());
+
+        assertTrue(duplicate.await(1, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, handled.get());
+    }
+
+    @Test
+    void testShedsNewGamesButAdmitsAnswersWhenSaturated() throws InterruptedException {
+        UpdateDispatcher bounded = new UpdateDispatcher(executor, new BotMetrics(), new UpdateDeduplicator(), 2, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch callbackHandled = new CountDownLatch(1);
+        List<Update> shedUpdates = new CopyOnWriteArrayList<>();
+        Consumer<Update> blocking = update -> {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        bounded.dispatch(message(1, 1L), blocking, shedUpdates::add);
+        bounded.dispatch(message(2, 2L), blocking, shedUpdates::add);
+        bounded.dispatch(message(3, 3L), blocking, shedUpdates::add);
+        bounded.dispatch(callback(4, 4L), update -> callbackHandled.countDown(), shedUpdates::add);
+
+        assertTrue(callbackHandled.await(1, TimeUnit.SECONDS));
+        assertTrue(bounded.isShedding());
+        assertEquals(1, bounded.getShedCount());
+        assertEquals(3, shedUpdates.get(0).getUpdateId());
+        bounded.dispatch(callback(6, 6L, TrickHandler.START_TRICK), blocking, shedUpdates::add);
+        assertEquals(2, bounded.getShedCount());
+        assertEquals(6, shedUpdates.get(1).getUpdateId());
+
+        release.countDown();
+        for (int i = 0; i < 100 && bounded.getQueuedUpdates() > 0; i++) {
+            Thread.sleep(10);
+        }
+        CountDownLatch admitted = new CountDownLatch(1);
+        bounded.dispatch(message(5, 5L), update -> admitted.countDown(), shedUpdates::add);
+
+        assertTrue(admitted.await(1, TimeUnit.SECONDS));
+        assertFalse(bounded.isShedding());
+    }
+
+    @Test
+    void testChatIdOfUpdateWithoutChat() {
+        assertNull(UpdateDispatcher.chatIdOf(new Update()));
+    }
+
+    private static Update message(int updateId, long chatId) {
+        Message message = new Message();
+        message.setChat(new Chat(chatId, "private"));
+        message.setText("/start");
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+
+    private static Update callback(int updateId, long chatId) {
+        return callback(updateId, chatId, "0:1");
+    }
+
+    private static Update callback(int updateId, long chatId, String data) {
+        Message message = new Message();
+        message.setChat(new Chat(chatId, "private"));
+        CallbackQuery callbackQuery = new CallbackQuery();
+        callbackQuery.setId("query-" + updateId);
+        callbackQuery.setData(data);
+        callbackQuery.setMessage(message);
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setCallbackQuery(callbackQuery);
+        return update;
+    }
+}
@@ -0,0 +1,86 @@
+package telegram.trickbot.bot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import telegram.trickbot.cluster.ClusterRouter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Executors;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WebhookBotTest {
+    private static final long TIMEOUT = 3000;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private TrickHandler trickHandler;
+    private WebhookBot webhookBot;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        trickHandler = mock(TrickHandler.class);
+        webhookBot = new WebhookBot(trickHandler, new UpdateDispatcher(Executors.newVirtualThreadPerTaskExecutor()),
+                ClusterRouter.disabled(), mock(AbsSender.class), "127.0.0.1", 0, "/webhook", "", "secret");
+        webhookBot.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        webhookBot.stop();
+    }
+
+    @Test
+    void testRecordedMessageUpdateIsDispatched() throws Exception {
+        HttpResponse<Void> response = post(recorded("start-message.json"), "secret");
+
+        assertEquals(200, response.statusCode());
+        verify(trickHandler, timeout(TIMEOUT)).handleUpdate(argThat(update ->
+                update.getUpdateId() == 100000001 && "/start".equals(update.getMessage().getText())));
+    }
+
+    @Test
+    void testRecordedCallbackUpdateIsDispatched() throws Exception {
+        HttpResponse<Void> response = post(recorded("pile-callback.json"), "secret");
+
+        assertEquals(200, response.statusCode());
+        verify(trickHandler, timeout(TIMEOUT)).handleUpdate(argThat(update ->
+                "2".equals(update.getCallbackQuery().getData())
+                        && update.getCallbackQuery().getMessage().getChatId() == 123456789L));
+    }
+
+    @Test
+    void testInvalidSecretTokenIsRejected() throws Exception {
+        HttpResponse<Void> response = post(recorded("start-message.json"), "wrong");
+
+        assertEquals(403, response.statusCode());
+        verifyNoInteractions(trickHandler);
+    }
+
+    @Test
+    void testMalformedBodyIsRejected() throws Exception {
+        HttpResponse<Void> response = post("not json".getBytes(), "secret");
+
+        assertEquals(400, response.statusCode());
+        verifyNoInteractions(trickHandler);
+    }
+
+    private HttpResponse<Void> post(byte[] body, String secretToken) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + webhookBot.getPort() + "/webhook"))
+                .header("Content-Type", "application/json")
+                .header("X-Telegram-Bot-Api-Secret-Token", secretToken)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    private byte[] recorded(String name) throws IOException {
+        try (InputStream input = getClass().getResourceAsStream("/updates/" + name)) {
+            return input.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package telegram.trickbot.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterRouterTest {
+    private static final long TIMEOUT = 3000;
+    private static final String SECRET = "cluster-secret";
+    private final Map<String, Queue<Update>> received = new ConcurrentHashMap<>();
+    private final Queue<Update> shed = new ConcurrentLinkedQueue<>();
+    private final List<ClusterWorker> workers = new ArrayList<>();
+    private ClusterRouter router;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        router = new ClusterRouter(true, "127.0.0.1", 0, SECRET);
+        router.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        workers.forEach(ClusterWorker::stop);
+        router.stop();
+    }
+
+    @Test
+    void testDisabledRouterLeavesUpdatesToLocalDispatch() {
+        assertFalse(ClusterRouter.disabled().route(message(1, 10L), shed::add));
+    }
+
+    @Test
+    void testWithoutWorkersUpdatesStayLocal() {
+        assertFalse(route(message(1, 10L)));
+    }
+
+    @Test
+    void testRoutesEachChatToItsOwner() throws InterruptedException {
+        startWorker("a");
+        startWorker("b");
+        awaitWorkers(2);
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(route(message(i, i)));
+            assertTrue(route(callback(1000 + i, i)));
+        }
+
+        awaitReceived(100);
+        received.forEach((node, updates) -> updates.forEach(update ->
+                assertEquals(node, router.ownerOf(chatIdOf(update)))));
+        assertEquals(2, received.size());
+        assertEquals("0:1", received.values().stream().flatMap(Queue::stream)
+                .filter(Update::hasCallbackQuery).findFirst().orElseThrow().getCallbackQuery().getData());
+    }
+
+    @Test
+    void testChatsMoveToRemainingWorkerWhenOneLeaves() throws InterruptedException {
+        ClusterWorker leaving = startWorker("a");
+        startWorker("b");
+        awaitWorkers(2);
+
+        leaving.stop();
+        awaitWorkers(1);
+        received.clear();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(route(message(i, i)));
+        }
+
+        awaitReceived(20);
+        assertEquals(20, received.get("b").size());
+        assertNull(received.get("a"));
+    }
+
+    @Test
+    void testJoiningWorkerTakesOverPartOfTheChats() throws InterruptedException {
+        startWorker("a");
+        awaitWorkers(1);
+        startWorker("b");
+        awaitWorkers(2);
+
+        for (int i = 0; i < 100; i++) {
+            route(message(i, i));
+        }
+
+        awaitReceived(100);
+        assertFalse(received.get("a").isEmpty());
+        assertFalse(received.get("b").isEmpty());
+        assertEquals(2, router.getRebalanceCount());
+    }
+
+    @Test
+    void testWorkerWithWrongSecretIsRejected() throws InterruptedException {
+        ClusterWorker intruder = startWorker("a", "wrong-secret", "a", update -> { });
+
+        Thread.sleep(300);
+
+        assertEquals(0, router.getWorkerCount());
+        assertFalse(intruder.isConnected());
+        assertFalse(route(message(1, 10L)));
+    }
+
+    @Test
+    void testDuplicateNodeIdIsRejectedAndFirstWorkerKeepsItsChats() throws InterruptedException {
+        startWorker("a", SECRET, "first", update -> { });
+        awaitWorkers(1);
+        ClusterWorker duplicate = startWorker("a", SECRET, "second", update -> { });
+
+        Thread.sleep(300);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(route(message(i, i)));
+        }
+
+        awaitReceived(20);
+        assertEquals(20, received.get("first").size());
+        assertNull(received.get("second"));
+        assertFalse(duplicate.isConnected());
+        assertEquals(1, router.getRebalanceCount());
+    }
+
+    @Test
+    void testClusterNeedsSecretNodeIdAndStatelessTricks() {
+        assertThrows(IllegalArgumentException.class, () -> new ClusterRouter(true, "127.0.0.1", 0, " ").start());
+        assertThrows(IllegalArgumentException.class, () -> new ClusterRouter(true, "127.0.0.1", 0, SECRET, 1024,
+                Duration.ofMillis(50), false).start());
+        assertThrows(IllegalArgumentException.class, () -> new ClusterWorker(new InetSocketAddress("127.0.0.1", 1), "",
+                SECRET, Duration.ofMillis(50), update -> { }));
+    }
+
+    @Test
+    void testStalledWorkerShedsUpdatesThenHandsOverItsQueue() throws InterruptedException, IOException {
+        router.stop();
+        router = new ClusterRouter(true, "127.0.0.1", 0, SECRET, 16);
+        router.start();
+        CountDownLatch stalled = new CountDownLatch(1);
+        startWorker("a", SECRET, "a", update -> awaitQuietly(stalled));
+        awaitWorkers(1);
+        startWorker("b");
+        awaitWorkers(2);
+
+        // Worker a stops reading after its first update, so its socket buffers and then its queue fill up.
+        String bulk = "x".repeat(64 * 1024);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (int i = 0; router.getWorkerCount() == 2 && System.currentTimeMillis() < deadline; i++) {
+            if ("a".equals(router.ownerOf(i))) {
+                Update update = message(i, i);
+                update.getMessage().setText(bulk);
+                assertTrue(route(update), "an owned chat was left to the local dispatcher");
+            }
+        }
+
+        assertEquals(1, router.getWorkerCount());
+        assertFalse(shed.isEmpty());
+        assertEquals(shed.size(), router.getShedCount());
+        assertEquals("b", router.ownerOf(1L));
+        // Everything still queued for a moves to b; what a's socket had already taken is lost with it.
+        while (total() < 16 && System.currentTimeMillis() < deadline + TIMEOUT) {
+            Thread.sleep(10);
+        }
+        assertTrue(received.get("b").size() >= 16);
+        assertTrue(received.get("b").stream().allMatch(update -> "b".equals(router.ownerOf(chatIdOf(update)))));
+        stalled.countDown();
+    }
+
+    private boolean route(Update update) {
+        return router.route(update, shed::add);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ClusterWorker startWorker(String nodeId) {
+        return startWorker(nodeId, SECRET, nodeId, update -> { });
+    }
+
+    private ClusterWorker startWorker(String nodeId, String secret, String label, Consumer<Update> before) {
+        ClusterWorker worker = new ClusterWorker(new InetSocketAddress("127.0.0.1", router.getPort()), nodeId, secret,
+                Duration.ofMillis(50), update -> {
+                    before.accept(update);
+                    received.computeIfAbsent(label, id -> new ConcurrentLinkedQueue<>()).add(update);
+                });
+        worker.start();
+        workers.add(worker);
+        return worker;
+    }
+
+    private void awaitWorkers(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (router.getWorkerCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, router.getWorkerCount());
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (total() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, total());
+    }
+
+    private int total() {
+        return received.values().stream().mapToInt(Queue::size).sum();
+    }
+
+    private static long chatIdOf(Update update) {
+        return update.hasMessage() ? update.getMessage().getChatId()
+                : update.getCallbackQuery().getMessage().getChatId();
+    }
+
+    private static Update message(int updateId, long chatId) {
+        Message message = new Message();
+        message.setMessageId(updateId);
+        message.setChat(new Chat(chatId, "private"));
+        message.setText("/start");
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+
+    private static Update callback(int updateId, long chatId) {
+        Message message = new Message();
+        message.setMessageId(updateId);
+        message.setChat(new Chat(chatId, "private"));
+        CallbackQuery callbackQuery = new CallbackQuery();
+        callbackQuery.setId("query-" + updateId);
+        callbackQuery.setData("0:1");
+        callbackQuery.setMessage(message);
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setCallbackQuery(callbackQuery);
+        return update;
+    }
+}
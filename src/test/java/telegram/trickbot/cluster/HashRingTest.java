@@ -0,0 +1,82 @@
+package telegram.trickbot.cluster;
+
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashRingTest {
+    private static final int CHATS = 30_000;
+
+    @Test
+    void testEmptyRingHasNoOwner() {
+        assertNull(new HashRing().ownerOf(42L));
+    }
+
+    @Test
+    void testSpreadsChatsEvenly() {
+        HashRing ring = ringOf("a", "b", "c");
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (long chatId = 0; chatId < CHATS; chatId++) {
+            counts.merge(ring.ownerOf(chatId), 1, Integer::sum);
+        }
+
+        assertEquals(Set.of("a", "b", "c"), counts.keySet());
+        counts.values().forEach(count -> assertTrue(count > CHATS / 3 * 0.7 && count < CHATS / 3 * 1.3,
+                "unbalanced: " + counts));
+    }
+
+    @Test
+    void testJoiningNodeTakesChatsOnlyFromOthers() {
+        HashRing ring = ringOf("a", "b", "c");
+        Map<Long, String> before = owners(ring);
+
+        ring.add("d");
+
+        int moved = 0;
+        for (long chatId = 0; chatId < CHATS; chatId++) {
+            String owner = ring.ownerOf(chatId);
+            if (!owner.equals(before.get(chatId))) {
+                assertEquals("d", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > CHATS / 4 * 0.7 && moved < CHATS / 4 * 1.3, "moved " + moved);
+    }
+
+    @Test
+    void testLeavingNodeHandsOverOnlyItsChats() {
+        HashRing ring = ringOf("a", "b", "c");
+        Map<Long, String> before = owners(ring);
+
+        ring.remove("b");
+
+        for (long chatId = 0; chatId < CHATS; chatId++) {
+            if (!before.get(chatId).equals("b")) {
+                assertEquals(before.get(chatId), ring.ownerOf(chatId));
+            }
+            else {
+                assertNotEquals("b", ring.ownerOf(chatId));
+            }
+        }
+        assertEquals(Set.of("a", "c"), ring.getNodes());
+    }
+
+    private static HashRing ringOf(String... nodes) {
+        HashRing ring = new HashRing();
+        for (String node : nodes) {
+            ring.add(node);
+        }
+        return ring;
+    }
+
+    private static Map<Long, String> owners(HashRing ring) {
+        Map<Long, String> owners = new HashMap<>();
+        for (long chatId = 0; chatId < CHATS; chatId++) {
+            owners.put(chatId, ring.ownerOf(chatId));
+        }
+        return owners;
+    }
+}
@@ -0,0 +1,19 @@
+package telegram.trickbot.config;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.bots.DefaultAbsSender;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelegramConfigTest {
+
+    @Test
+    void testSenderPoolFitsOutboundStepsAndCallbackAnswers() {
+        DefaultAbsSender sender = new TelegramConfig().telegramSender(new DefaultBotOptions(), "0:test", 32, 8);
+
+        PoolingHttpClientConnectionManager pool = TelegramConfig.connectionPool(sender);
+        assertEquals(40, pool.getMaxTotal());
+        assertEquals(40, pool.getDefaultMaxPerRoute());
+    }
+}
@@ -0,0 +1,330 @@
+package telegram.trickbot.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal stand-in for the Telegram Bot API: hands out queued updates through getUpdates and
+ * records every send/edit call per chat, with configurable latency and injected 429 responses.
+ */
+@Slf4j
+public class FakeBotApiServer implements AutoCloseable {
+    private static final Pattern PATH = Pattern.compile("/bot[^/]+/(\\w+)");
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+    private static final Pattern PART_NAME = Pattern.compile("name=\"([^\"]+)\"");
+    private static final long MAX_POLL_MILLIS = 1000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<ObjectNode> updates = new LinkedBlockingQueue<>();
+    private final ConcurrentMap<Long, BlockingQueue<Call>> calls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> callCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger updateIds = new AtomicInteger();
+    private final AtomicInteger messageIds = new AtomicInteger();
+    private final AtomicInteger callbackIds = new AtomicInteger();
+    private final LongAdder tooManyRequests = new LongAdder();
+    private final long latencyMillis;
+    private final double errorRate;
+    private final int retryAfterSeconds;
+    // Platform threads: the bot's HTTP client can pin virtual threads, and the server must not compete for their carriers.
+    private final ExecutorService executor = Executors.newCachedThreadPool(Thread.ofPlatform().name("fake-bot-api-", 1).daemon().factory());
+    private final HttpServer server;
+
+    public FakeBotApiServer(long latencyMillis, double errorRate, int retryAfterSeconds) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getApiUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/bot";
+    }
+
+    public void sendText(long chatId, String text) {
+        ObjectNode message = message(chatId);
+        message.put("text", text);
+        message.set("from", user(chatId));
+        enqueue("message", message);
+    }
+
+    public void pressButton(long chatId, String callbackData) {
+        ObjectNode callback = objectMapper.createObjectNode();
+        callback.put("id", String.valueOf(callbackIds.incrementAndGet()));
+        callback.set("from", user(chatId));
+        callback.set("message", message(chatId));
+        callback.put("chat_instance", String.valueOf(chatId));
+        callback.put("data", callbackData);
+        enqueue("callback_query", callback);
+    }
+
+    public Call awaitCall(long chatId, long timeoutMillis) throws InterruptedException {
+        return callsFor(chatId).poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        callCounts.forEach((method, count) -> counts.put(method, count.sum()));
+        return counts;
+    }
+
+    public long getTooManyRequestsCount() {
+        return tooManyRequests.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void enqueue(String type, ObjectNode payload) {
+        ObjectNode update = objectMapper.createObjectNode();
+        update.put("update_id", updateIds.incrementAndGet());
+        update.set(type, payload);
+        updates.add(update);
+    }
+
+    private BlockingQueue<Call> callsFor(long chatId) {
+        return calls.computeIfAbsent(chatId, id -> new LinkedBlockingQueue<>());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Matcher path = PATH.matcher(exchange.getRequestURI().getPath());
+            if (!path.matches()) {
+                respond(exchange, 404, error(404, "Not Found", 0));
+                return;
+            }
+            String method = path.group(1).toLowerCase(Locale.ROOT);
+            Map<String, String> params = parseParams(exchange);
+            callCounts.computeIfAbsent(method, key -> new LongAdder()).increment();
+
+            if (method.equals("getupdates")) {
+                respond(exchange, 200, ok(pollUpdates(params)));
+                return;
+            }
+
+            sleep(latencyMillis);
+            boolean outgoing = method.startsWith("send") || method.startsWith("edit");
+            if (outgoing && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                tooManyRequests.increment();
+                respond(exchange, 429, error(429, "Too Many Requests: retry after " + retryAfterSeconds, retryAfterSeconds));
+                return;
+            }
+
+            String chatId = params.get("chat_id");
+            if (chatId == null) {
+                respond(exchange, 200, ok(objectMapper.getNodeFactory().booleanNode(true)));
+                return;
+            }
+            long chat = Long.parseLong(chatId);
+            JsonNode result = method.equals("sendmediagroup") ? mediaGroupResult(chat, params) : messageResult(chat, method);
+            callsFor(chat).add(new Call(method, params, System.nanoTime()));
+            respond(exchange, 200, ok(result));
+        }
+        catch (RuntimeException e) {
+            log.error("Fake Bot API failed to handle {}", exchange.getRequestURI(), e);
+            throw e;
+        }
+    }
+
+    private ArrayNode pollUpdates(Map<String, String> params) {
+        ArrayNode result = objectMapper.createArrayNode();
+        long timeoutMillis = Math.min(MAX_POLL_MILLIS, TimeUnit.SECONDS.toMillis(parseInt(params.get("timeout"), 0)));
+        int limit = parseInt(params.get("limit"), 100);
+        try {
+            ObjectNode first = updates.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (first != null) {
+                List<ObjectNode> batch = new ArrayList<>();
+                batch.add(first);
+                updates.drainTo(batch, limit - 1);
+                batch.forEach(result::add);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    private JsonNode messageResult(long chatId, String method) {
+        ObjectNode message = message(chatId);
+        if (method.equals("sendphoto") || method.equals("editmessagemedia")) {
+            message.set("photo", photo());
+        }
+        return message;
+    }
+
+    private JsonNode mediaGroupResult(long chatId, Map<String, String> params) throws IOException {
+        ArrayNode messages = objectMapper.createArrayNode();
+        int media = objectMapper.readTree(params.getOrDefault("media", "[]")).size();
+        for (int i = 0; i < media; i++) {
+            ObjectNode message = message(chatId);
+            message.set("photo", photo());
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private ObjectNode message(long chatId) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("message_id", messageIds.incrementAndGet());
+        message.put("date", System.currentTimeMillis() / 1000);
+        ObjectNode chat = message.putObject("chat");
+        chat.put("id", chatId);
+        chat.put("type", "private");
+        return message;
+    }
+
+    private ObjectNode user(long chatId) {
+        ObjectNode user = objectMapper.createObjectNode();
+        user.put("id", chatId);
+        user.put("is_bot", false);
+        user.put("first_name", "Player" + chatId);
+        return user;
+    }
+
+    private ArrayNode photo() {
+        int id = messageIds.get();
+        ArrayNode sizes = objectMapper.createArrayNode();
+        ObjectNode size = sizes.addObject();
+        size.put("file_id", "file-" + id);
+        size.put("file_unique_id", "unique-" + id);
+        size.put("width", 512);
+        size.put("height", 512);
+        return sizes;
+    }
+
+    private ObjectNode ok(JsonNode result) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("ok", true);
+        response.set("result", result);
+        return response;
+    }
+
+    private ObjectNode error(int code, String description, int retryAfter) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("ok", false);
+        response.put("error_code", code);
+        response.put("description", description);
+        if (retryAfter > 0) {
+            response.putObject("parameters").put("retry_after", retryAfter);
+        }
+        return response;
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Map<String, String> parseParams(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        Map<String, String> params = new HashMap<>();
+        if (body.length == 0) {
+            return params;
+        }
+
+        if (contentType != null && contentType.startsWith("multipart/")) {
+            Matcher boundary = BOUNDARY.matcher(contentType);
+            if (boundary.find()) {
+                parseMultipart(new String(body, StandardCharsets.ISO_8859_1), boundary.group(1), params);
+            }
+            return params;
+        }
+
+        objectMapper.readTree(body).fields().forEachRemaining(field ->
+                params.put(field.getKey(), field.getValue().isValueNode() ? field.getValue().asText() : field.getValue().toString()));
+        return params;
+    }
+
+    private static void parseMultipart(String body, String boundary, Map<String, String> params) {
+        for (String part : body.split("--" + Pattern.quote(boundary))) {
+            int separator = part.indexOf("\r\n\r\n");
+            if (separator < 0) {
+                continue;
+            }
+            String headers = part.substring(0, separator);
+            Matcher name = PART_NAME.matcher(headers);
+            if (!name.find() || headers.contains("filename=")) {
+                continue;
+            }
+            String value = part.substring(separator + 4);
+            if (value.endsWith("\r\n")) {
+                value = value.substring(0, value.length() - 2);
+            }
+            params.put(name.group(1), new String(value.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public record Call(String method, Map<String, String> params, long receivedAt) {
+
+        public List<String> callbackData() {
+            String markup = params.get("reply_markup");
+            List<String> data = new ArrayList<>();
+            if (markup == null) {
+                return data;
+            }
+            Matcher matcher = Pattern.compile("\"callback_data\"\\s*:\\s*\"([^\"]*)\"").matcher(markup);
+            while (matcher.find()) {
+                data.add(matcher.group(1));
+            }
+            return data;
+        }
+
+        public boolean hasPhoto() {
+            return method.equals("sendphoto") || method.equals("sendmediagroup") || method.equals("editmessagemedia");
+        }
+    }
+
+}
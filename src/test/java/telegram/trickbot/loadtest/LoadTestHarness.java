@@ -0,0 +1,209 @@
+package telegram.trickbot.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import telegram.trickbot.Application;
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Boots the whole bot in polling mode against {@link FakeBotApiServer} and plays full games:
+ * /start, the start button, one pile choice per round and the reveal.
+ */
+@Slf4j
+public class LoadTestHarness {
+    private static final String START_TRICK = "start_trick";
+    private final Config config;
+
+    public LoadTestHarness(Config config) {
+        this.config = config;
+    }
+
+    public LoadReport run() throws IOException, InterruptedException {
+        Path cards = Files.createTempDirectory("trickbot-cards");
+        try (FakeBotApiServer api = new FakeBotApiServer(config.latencyMillis(), config.errorRate(), config.retryAfterSeconds())) {
+            writeCards(cards, config.deckSize());
+            ConfigurableApplicationContext context = SpringApplication.run(Application.class, botArguments(api, cards));
+            try {
+                return play(api);
+            }
+            finally {
+                context.close();
+            }
+        }
+    }
+
+    private LoadReport play(FakeBotApiServer api) throws InterruptedException {
+        ConcurrentLinkedQueue<Long> stepLatencies = new ConcurrentLinkedQueue<>();
+        LongAdder completed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        Semaphore concurrency = new Semaphore(config.concurrency());
+
+        long started = System.nanoTime();
+        try (ExecutorService players = Executors.newCachedThreadPool()) {
+            for (int i = 0; i < config.players(); i++) {
+                long chatId = 1_000_000L + i;
+                concurrency.acquire();
+                players.execute(() -> {
+                    try {
+                        if (playGame(api, chatId, stepLatencies)) {
+                            completed.increment();
+                        }
+                        else {
+                            failed.increment();
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failed.increment();
+                    }
+                    finally {
+                        concurrency.release();
+                    }
+                });
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+
+        long[] latencies = stepLatencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        return new LoadReport(config.players(), completed.sum(), failed.sum(), elapsed, latencies,
+                api.getCallCounts().entrySet().stream()
+                        .filter(entry -> !entry.getKey().equals("getupdates"))
+                        .mapToLong(entry -> entry.getValue())
+                        .sum(),
+                api.getTooManyRequestsCount());
+    }
+
+    private boolean playGame(FakeBotApiServer api, long chatId, ConcurrentLinkedQueue<Long> stepLatencies)
+            throws InterruptedException {
+        long sent = System.nanoTime();
+        api.sendText(chatId, "/start");
+        Step step = awaitKeyboard(api, chatId);
+        if (step == null || !step.buttons().contains(START_TRICK)) {
+            return false;
+        }
+        stepLatencies.add(step.lastCallAt() - sent);
+
+        sent = System.nanoTime();
+        api.pressButton(chatId, START_TRICK);
+        while (true) {
+            step = awaitKeyboard(api, chatId);
+            if (step == null) {
+                return false;
+            }
+            if (step.buttons().contains(START_TRICK)) {
+                stepLatencies.add(step.lastPhotoAt() - sent);
+                return true;
+            }
+            stepLatencies.add(step.lastCallAt() - sent);
+
+            List<String> buttons = step.buttons();
+            sent = System.nanoTime();
+            api.pressButton(chatId, buttons.get(ThreadLocalRandom.current().nextInt(buttons.size())));
+        }
+    }
+
+    // A round ends with the message that carries a keyboard: the next question or, after the reveal, the welcome.
+    private Step awaitKeyboard(FakeBotApiServer api, long chatId) throws InterruptedException {
+        long lastPhotoAt = 0;
+        while (true) {
+            FakeBotApiServer.Call call = api.awaitCall(chatId, config.stepTimeoutMillis());
+            if (call == null) {
+                log.warn("Chat {} timed out waiting for the bot", chatId);
+                return null;
+            }
+            if (call.hasPhoto()) {
+                lastPhotoAt = call.receivedAt();
+            }
+            List<String> buttons = call.callbackData();
+            if (!buttons.isEmpty()) {
+                return new Step(buttons, call.receivedAt(), lastPhotoAt != 0 ? lastPhotoAt : call.receivedAt());
+            }
+        }
+    }
+
+    private String[] botArguments(FakeBotApiServer api, Path cards) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--bot.mode=polling",
+                "--bot.token=0:load-test",
+                "--bot.username=load_test_bot",
+                "--bot.api-url=" + api.getApiUrl(),
+                "--pictures.path=" + cards + "/",
+                "--pictures.extension=.png",
+                "--media.cache-file=",
+                "--journal.file=" + cards.resolve("sessions.journal"),
+                "--metrics.enabled=false",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN"));
+        arguments.addAll(config.botArguments());
+        return arguments.toArray(String[]::new);
+    }
+
+    private static void writeCards(Path directory, int deckSize) throws IOException {
+        for (int i = 1; i <= deckSize; i++) {
+            BufferedImage card = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = card.createGraphics();
+            graphics.setColor(Color.getHSBColor(i / (float) deckSize, 0.6f, 0.9f));
+            graphics.fillRect(0, 0, 64, 64);
+            graphics.dispose();
+            ImageIO.write(card, "png", directory.resolve(i + ".png").toFile());
+        }
+    }
+
+    private record Step(List<String> buttons, long lastCallAt, long lastPhotoAt) {
+    }
+
+    public record Config(int players, int concurrency, long latencyMillis, double errorRate, int retryAfterSeconds,
+                         long stepTimeoutMillis, int deckSize, List<String> botArguments) {
+    }
+
+    public record LoadReport(int players, long completed, long failed, long elapsedNanos, long[] stepLatencies,
+                             long apiCalls, long tooManyRequests) {
+
+        public double gamesPerSecond() {
+            return completed / (elapsedNanos / 1e9);
+        }
+
+        public double callsPerSecond() {
+            return apiCalls / (elapsedNanos / 1e9);
+        }
+
+        public double errorRate() {
+            return players == 0 ? 0 : failed / (double) players;
+        }
+
+        public long percentileMillis(double percentile) {
+            if (stepLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * stepLatencies.length) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(stepLatencies[Math.max(0, index)]);
+        }
+
+        public String format() {
+            return String.format("""
+                            players: %d, completed: %d, failed: %d (%.2f%%)
+                            elapsed: %.1f s, games/s: %.1f, api calls: %d (%.1f/s), injected 429: %d
+                            step latency: p50 %d ms, p99 %d ms, max %d ms (%d steps)""",
+                    players, completed, failed, errorRate() * 100,
+                    elapsedNanos / 1e9, gamesPerSecond(), apiCalls, callsPerSecond(), tooManyRequests,
+                    percentileMillis(50), percentileMillis(99), percentileMillis(100), stepLatencies.length);
+        }
+    }
+
+}
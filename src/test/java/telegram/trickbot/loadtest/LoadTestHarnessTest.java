@@ -0,0 +1,23 @@
+package telegram.trickbot.loadtest;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadTestHarnessTest {
+
+    @Test
+    void testPlayersFinishGamesDespiteInjectedErrors() throws Exception {
+        LoadTestHarness.Config config = new LoadTestHarness.Config(4, 4, 5, 0.05, 1, 5_000, 21, List.of(
+                "--ratelimit.chat-per-second=1000",
+                "--ratelimit.chat-burst=1000",
+                "--ratelimit.global-per-second=100000"));
+
+        LoadTestHarness.LoadReport report = new LoadTestHarness(config).run();
+
+        assertThat(report.completed()).isEqualTo(4);
+        assertThat(report.failed()).isZero();
+        assertThat(report.stepLatencies()).hasSize(4 * 5);
+        assertThat(report.percentileMillis(50)).isPositive();
+    }
+}
@@ -0,0 +1,34 @@
+package telegram.trickbot.loadtest;
+
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Capacity run, excluded from the regular build: {@code mvn test -Pload-test -Dload.players=2000}.
+ */
+class TrickBotLoadTest {
+
+    @Test
+    void runLoad() throws Exception {
+        LoadTestHarness.Config config = new LoadTestHarness.Config(
+                Integer.getInteger("load.players", 1000),
+                Integer.getInteger("load.concurrency", 1000),
+                Long.getLong("load.latency-ms", 30),
+                Double.parseDouble(System.getProperty("load.error-rate", "0.01")),
+                Integer.getInteger("load.retry-after", 1),
+                Long.getLong("load.step-timeout-ms", 120_000),
+                Integer.getInteger("load.deck-size", 21),
+                botArguments());
+
+        LoadTestHarness.LoadReport report = new LoadTestHarness(config).run();
+
+        System.out.println(report.format());
+    }
+
+    private static List<String> botArguments() {
+        String arguments = System.getProperty("load.bot-args",
+                "--ratelimit.chat-per-second=1000 --ratelimit.chat-burst=1000 --ratelimit.global-per-second=100000");
+        return Arrays.stream(arguments.trim().split("\\s+")).filter(argument -> !argument.isEmpty()).toList();
+    }
+}
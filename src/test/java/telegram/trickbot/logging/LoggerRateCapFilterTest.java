@@ -0,0 +1,68 @@
+package telegram.trickbot.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoggerRateCapFilterTest {
+    private final LoggerContext context = new LoggerContext();
+    private final Logger hot = context.getLogger("telegram.trickbot.hot");
+    private final Logger quiet = context.getLogger("telegram.trickbot.quiet");
+
+    @Test
+    void testCapsInfoEventsPerLogger() {
+        LoggerRateCapFilter filter = new LoggerRateCapFilter();
+        filter.setMaxPerSecond(5);
+        long droppedBefore = LoggerRateCapFilter.getDroppedCount();
+
+        int denied = 0;
+        for (int i = 0; i < 20; i++) {
+            if (filter.decide(null, hot, Level.INFO, "event {}", new Object[]{i}, null) == FilterReply.DENY) {
+                denied++;
+            }
+        }
+
+        assertTrue(denied >= 10, "denied " + denied);
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, quiet, Level.INFO, "event", null, null));
+        assertTrue(LoggerRateCapFilter.getDroppedCount() - droppedBefore >= 10);
+    }
+
+    @Test
+    void testWarningsAndEnabledChecksAreNeverCapped() {
+        LoggerRateCapFilter filter = new LoggerRateCapFilter();
+        filter.setMaxPerSecond(1);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, hot, Level.WARN, "warning", null, null));
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, hot, Level.INFO, null, null, null));
+        }
+    }
+
+    @Test
+    void testDisabledEventsDoNotUseTheCap() {
+        LoggerRateCapFilter filter = new LoggerRateCapFilter();
+        filter.setMaxPerSecond(1);
+        hot.setLevel(Level.INFO);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, hot, Level.DEBUG, "debug {}", new Object[]{i}, null));
+        }
+
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, hot, Level.INFO, "event", null, null));
+        assertEquals(FilterReply.DENY, filter.decide(null, hot, Level.INFO, "event", null, null));
+    }
+
+    @Test
+    void testOtherLoggersAreNeverCapped() {
+        LoggerRateCapFilter filter = new LoggerRateCapFilter();
+        filter.setMaxPerSecond(1);
+        Logger library = context.getLogger("org.telegram.telegrambots");
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FilterReply.NEUTRAL, filter.decide(null, library, Level.INFO, "event {}", new Object[]{i}, null));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package telegram.trickbot.logging;
+
+import org.junit.jupiter.api.Test;
+import java.util.stream.LongStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrickEventsTest {
+
+    @Test
+    void testTracesEveryChatWithoutSampling() {
+        TrickEvents events = new TrickEvents();
+
+        assertTrue(LongStream.range(0, 100).allMatch(events::isSampled));
+    }
+
+    @Test
+    void testSamplesChatsConsistently() {
+        TrickEvents events = new TrickEvents(10);
+
+        long traced = LongStream.range(0, 10_000).filter(events::isSampled).count();
+
+        assertTrue(traced > 700 && traced < 1300, "traced " + traced);
+        LongStream.range(0, 100).forEach(chatId -> assertEquals(events.isSampled(chatId), events.isSampled(chatId)));
+    }
+
+    @Test
+    void testCallbackDataIsLoggedAsAShortHash() {
+        String token = "AQIDBAUGBwgJCgsMDQ4PEBESExQVFhcYGRobHB0eHyA";
+
+        String hash = TrickEvents.dataHash(token);
+
+        assertEquals(8, hash.length());
+        assertFalse(token.contains(hash));
+        assertEquals(hash, TrickEvents.dataHash(token));
+        assertNotEquals(hash, TrickEvents.dataHash(token + "x"));
+        assertEquals("-", TrickEvents.dataHash(null));
+    }
+}
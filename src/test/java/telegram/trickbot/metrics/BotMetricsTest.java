@@ -0,0 +1,63 @@
+package telegram.trickbot.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BotMetricsTest {
+    private final BotMetrics metrics = new BotMetrics();
+
+    @Test
+    void testTimeCall_RecordsDurationByMethod() throws TelegramApiException {
+        assertEquals("ok", metrics.timeCall("SendMessage", () -> "ok"));
+        metrics.timeCall("SendMessage", () -> "ok");
+        metrics.timeCall("SendPhoto", () -> "ok");
+
+        assertEquals(2, metrics.histogram(BotMetrics.TELEGRAM_CALLS, "method=\"SendMessage\"").getCount());
+        assertEquals(1, metrics.histogram(BotMetrics.TELEGRAM_CALLS, "method=\"SendPhoto\"").getCount());
+    }
+
+    @Test
+    void testTimeCall_CountsErrorsByCode() {
+        TelegramApiRequestException tooManyRequests = mock(TelegramApiRequestException.class);
+        when(tooManyRequests.getErrorCode()).thenReturn(429);
+
+        assertThrows(TelegramApiRequestException.class,
+                () -> metrics.timeCall("SendMediaGroup", () -> { throw tooManyRequests; }));
+        assertThrows(TelegramApiException.class,
+                () -> metrics.timeCall("SendMediaGroup", () -> { throw new TelegramApiException("io"); }));
+
+        assertEquals(1, metrics.getCount(BotMetrics.TELEGRAM_ERRORS, "method=\"SendMediaGroup\",code=\"429\""));
+        assertEquals(1, metrics.getCount(BotMetrics.TELEGRAM_ERRORS, "method=\"SendMediaGroup\",code=\"none\""));
+        assertEquals(2, metrics.histogram(BotMetrics.TELEGRAM_CALLS, "method=\"SendMediaGroup\"").getCount());
+    }
+
+    @Test
+    void testFirstUpdateListenerRunsOnce() {
+        int[] calls = new int[1];
+        metrics.onFirstUpdate(() -> calls[0]++);
+
+        metrics.recordIntakeLag(1_000);
+        metrics.recordIntakeLag(2_000);
+
+        assertEquals(1, calls[0]);
+    }
+
+    @Test
+    void testScrape_WritesPrometheusText() {
+        metrics.recordStep(1, 30_000_000);
+        metrics.recordTrick(2_000_000_000L);
+        metrics.gauge("trickbot_sessions_active", "Trick sessions", () -> 7);
+
+        String text = metrics.scrape();
+
+        assertTrue(text.contains("# TYPE trickbot_trick_step_seconds histogram\n"));
+        assertTrue(text.contains("trickbot_trick_step_seconds_bucket{round=\"1\",le=\"0.025\"} 0\n"));
+        assertTrue(text.contains("trickbot_trick_step_seconds_bucket{round=\"1\",le=\"0.05\"} 1\n"));
+        assertTrue(text.contains("trickbot_trick_step_seconds_bucket{round=\"1\",le=\"+Inf\"} 1\n"));
+        assertTrue(text.contains("trickbot_trick_seconds_sum 2.0\n"));
+        assertTrue(text.contains("# TYPE trickbot_sessions_active gauge\ntrickbot_sessions_active 7\n"));
+    }
+}
@@ -0,0 +1,70 @@
+package telegram.trickbot.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import telegram.trickbot.bot.UpdateDispatcher;
+import telegram.trickbot.cluster.ClusterRouter;
+import telegram.trickbot.service.DeckCatalog;
+import telegram.trickbot.service.OutboundPipeline;
+import telegram.trickbot.service.OutboundRateLimiter;
+import telegram.trickbot.service.PileRenderer;
+import telegram.trickbot.service.RequestTemplateCache;
+import telegram.trickbot.session.SessionJournal;
+import telegram.trickbot.session.SessionManager;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+    private SessionManager sessionManager;
+    private MetricsServer metricsServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        sessionManager = new SessionManager(Duration.ofMinutes(30), Duration.ofMinutes(1));
+        metricsServer = new MetricsServer(new BotMetrics(), sessionManager, SessionJournal.disabled(),
+                new UpdateDispatcher(Executors.newVirtualThreadPerTaskExecutor()), new OutboundPipeline(1),
+                OutboundRateLimiter.unlimited(), PileRenderer.disabled(), new RequestTemplateCache(), DeckCatalog.empty(), ClusterRouter.disabled(),
+                "127.0.0.1", 0, "/metrics");
+        metricsServer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        metricsServer.stop();
+        sessionManager.shutdown();
+    }
+
+    @Test
+    void testScrapeExposesGauges() throws Exception {
+        sessionManager.getSession(1L);
+        sessionManager.getSession(2L);
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri()).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain"));
+        assertTrue(response.body().contains("trickbot_sessions_active 2\n"));
+        assertTrue(response.body().contains("# TYPE trickbot_ratelimit_retries_total counter\n"));
+    }
+
+    @Test
+    void testRejectsNonGetRequests() throws Exception {
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(uri()).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.discarding());
+
+        assertEquals(405, response.statusCode());
+    }
+
+    private URI uri() {
+        return URI.create("http://127.0.0.1:" + metricsServer.getPort() + "/metrics");
+    }
+}
@@ -0,0 +1,46 @@
+package telegram.trickbot.metrics;
+
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupTimerTest {
+    private final BotMetrics metrics = new BotMetrics();
+    private final AtomicLong uptime = new AtomicLong();
+    private final StartupTimer timer = new StartupTimer(metrics, Duration.ofSeconds(10), uptime::get);
+
+    @Test
+    void testRecordsPhasesAsUptime() {
+        uptime.set(1_500);
+        timer.contextRefreshed();
+        uptime.set(2_000);
+        timer.ready();
+
+        String scrape = metrics.scrape();
+
+        assertTrue(scrape.contains("# TYPE trickbot_startup_seconds gauge"));
+        assertTrue(scrape.contains("trickbot_startup_seconds{phase=\"context_refreshed\"} 1.5\n"));
+        assertTrue(scrape.contains("trickbot_startup_seconds{phase=\"ready\"} 2.0\n"));
+    }
+
+    @Test
+    void testRecordsFirstUpdateOnce() {
+        uptime.set(3_000);
+        metrics.recordIntakeLag(1_000);
+        uptime.set(4_000);
+        metrics.recordIntakeLag(1_000);
+
+        assertTrue(metrics.scrape().contains("trickbot_startup_seconds{phase=\"first_update\"} 3.0\n"));
+    }
+
+    @Test
+    void testKeepsFirstRecordingOfPhase() {
+        uptime.set(1_000);
+        timer.phase("bot_registered");
+        uptime.set(9_000);
+        timer.phase("bot_registered");
+
+        assertTrue(metrics.scrape().contains("trickbot_startup_seconds{phase=\"bot_registered\"} 1.0\n"));
+    }
+}
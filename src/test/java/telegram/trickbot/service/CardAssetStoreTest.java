@@ -0,0 +1,103 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardAssetStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLoadsCardsIntoMemory() throws IOException {
+        Path card = writeCard("1.png", 10);
+
+        CardAssetStore store = new CardAssetStore(List.of(card.toString()), Duration.ZERO);
+
+        try (InputStream in = store.open(card.toString())) {
+            assertArrayEquals(Files.readAllBytes(card), in.readAllBytes());
+        }
+        assertEquals(1, store.size());
+        assertThrows(IllegalArgumentException.class, () -> store.open("unknown.png"));
+    }
+
+    @Test
+    void testMissingCardFailsAtStartup() {
+        List<String> cards = List.of(tempDir.resolve("missing.png").toString());
+
+        assertThrows(IllegalStateException.class, () -> new CardAssetStore(cards, Duration.ZERO));
+    }
+
+    @Test
+    void testCorruptCardFailsAtStartup() throws IOException {
+        Path card = Files.writeString(tempDir.resolve("1.png"), "not an image");
+
+        assertThrows(IllegalStateException.class, () -> new CardAssetStore(List.of(card.toString()), Duration.ZERO));
+    }
+
+    @Test
+    void testBackgroundLoadSkipsBadCards() throws IOException, InterruptedException {
+        Path card = writeCard("1.png", 10);
+        List<String> cards = List.of(tempDir.resolve("missing.png").toString(), card.toString());
+
+        CardAssetStore store = new CardAssetStore(cards, DeckCatalog.empty(), Duration.ZERO, true);
+        try {
+            for (int i = 0; i < 100 && !store.contains(card.toString()); i++) {
+                Thread.sleep(20);
+            }
+
+            assertTrue(store.contains(card.toString()));
+            assertFalse(store.contains(cards.get(0)));
+            assertEquals(1, store.size());
+        }
+        finally {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    void testReloadChanged_ReplacesModifiedCard() throws IOException {
+        Path card = writeCard("1.png", 10);
+        CardAssetStore store = new CardAssetStore(List.of(card.toString()), Duration.ZERO);
+        long checksum = store.getChecksum(card.toString());
+        List<String> reloaded = new ArrayList<>();
+        store.addReloadListener(reloaded::add);
+
+        assertEquals(0, store.reloadChanged());
+        writeCard("1.png", 20);
+        Files.setLastModifiedTime(card, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        assertEquals(1, store.reloadChanged());
+        assertNotEquals(checksum, store.getChecksum(card.toString()));
+        assertEquals(List.of(card.toString()), reloaded);
+    }
+
+    @Test
+    void testReloadChanged_KeepsLoadedCopyOfCorruptCard() throws IOException {
+        Path card = writeCard("1.png", 10);
+        CardAssetStore store = new CardAssetStore(List.of(card.toString()), Duration.ZERO);
+        long checksum = store.getChecksum(card.toString());
+
+        Files.writeString(card, "broken");
+
+        assertEquals(0, store.reloadChanged());
+        assertEquals(checksum, store.getChecksum(card.toString()));
+    }
+
+    private Path writeCard(String name, int size) throws IOException {
+        Path card = tempDir.resolve(name);
+        ImageIO.write(new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        return card;
+    }
+}
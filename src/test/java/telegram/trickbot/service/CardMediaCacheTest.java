@@ -0,0 +1,56 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardMediaCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFileIdsSurviveRestart() {
+        String storeFile = tempDir.resolve("media.properties").toString();
+        CardMediaCache cache = new CardMediaCache(storeFile);
+        cache.put("path/1.jpg", "id1");
+        cache.put("path/2.jpg", "id2");
+        cache.invalidate("path/2.jpg");
+
+        CardMediaCache restored = new CardMediaCache(storeFile);
+
+        assertEquals("id1", restored.getFileId("path/1.jpg"));
+        assertNull(restored.getFileId("path/2.jpg"));
+        assertEquals(1, restored.size());
+    }
+
+    @Test
+    void testConcurrentPutsFromVirtualThreadsAreAllSaved() throws InterruptedException {
+        String storeFile = tempDir.resolve("media.properties").toString();
+        CardMediaCache cache = new CardMediaCache(storeFile);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < 200; i++) {
+            int card = i;
+            executor.execute(() -> cache.put("path/" + card + ".jpg", "id" + card));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        CardMediaCache restored = new CardMediaCache(storeFile);
+
+        assertEquals(200, restored.size());
+        assertEquals("id199", restored.getFileId("path/199.jpg"));
+    }
+
+    @Test
+    void testBlankStoreFileKeepsCacheInMemory() {
+        CardMediaCache cache = new CardMediaCache("");
+        cache.put("path/1.jpg", "id1");
+
+        assertTrue(cache.contains("path/1.jpg"));
+    }
+}
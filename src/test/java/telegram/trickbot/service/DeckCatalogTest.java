@@ -0,0 +1,123 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeckCatalogTest {
+    private static final int DECK_SIZE = 3;
+    private static final int CARD_BYTES = 100;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDiscoversDecksWithoutLoadingImages() throws IOException {
+        writeDeck("cities", "Города");
+        writeDeck("planets", null);
+
+        DeckCatalog catalog = new DeckCatalog(tempDir, DECK_SIZE, ".png", Long.MAX_VALUE);
+
+        assertEquals(List.of("cities", "planets"), catalog.getDecks().stream().map(DeckCatalog.DeckInfo::id).toList());
+        assertEquals("Города", catalog.findDeck("cities").orElseThrow().title());
+        assertEquals("planets", catalog.findDeck("planets").orElseThrow().title());
+        assertEquals(DECK_SIZE * CARD_BYTES, catalog.findDeck("cities").orElseThrow().totalBytes());
+        assertEquals(0, catalog.getResidentDecks());
+        assertEquals(0, catalog.getLoadCount());
+    }
+
+    @Test
+    void testSkipsIncompleteDecks() throws IOException {
+        writeDeck("cities", null);
+        Files.delete(tempDir.resolve("cities").resolve("2.png"));
+
+        DeckCatalog catalog = new DeckCatalog(tempDir, DECK_SIZE, ".png", Long.MAX_VALUE);
+
+        assertTrue(catalog.getDecks().isEmpty());
+    }
+
+    @Test
+    void testLoadsDeckOnFirstUse() throws IOException {
+        List<String> cards = writeDeck("cities", null);
+        DeckCatalog catalog = new DeckCatalog(tempDir, DECK_SIZE, ".png", Long.MAX_VALUE);
+
+        try (InputStream in = catalog.open(cards.get(1))) {
+            assertArrayEquals(Files.readAllBytes(Path.of(cards.get(1))), in.readAllBytes());
+        }
+        catalog.open(cards.get(2)).close();
+
+        assertEquals(1, catalog.getLoadCount());
+        assertEquals(1, catalog.getResidentDecks());
+        assertEquals(DECK_SIZE * CARD_BYTES, catalog.getResidentBytes());
+        assertThrows(IllegalArgumentException.class, () -> catalog.open("unknown.png"));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedDeckOverBudget() throws IOException {
+        List<String> cities = writeDeck("cities", null);
+        List<String> planets = writeDeck("planets", null);
+        List<String> rivers = writeDeck("rivers", null);
+        DeckCatalog catalog = new DeckCatalog(tempDir, DECK_SIZE, ".png", 2L * DECK_SIZE * CARD_BYTES);
+        List<String> evicted = new ArrayList<>();
+        catalog.addEvictionListener(evicted::add);
+
+        catalog.open(cities.get(0)).close();
+        catalog.open(planets.get(0)).close();
+        catalog.open(cities.get(0)).close();
+        catalog.open(rivers.get(0)).close();
+
+        assertEquals(planets, evicted);
+        assertEquals(2, catalog.getResidentDecks());
+        assertEquals(1, catalog.getEvictionCount());
+        assertTrue(catalog.getResidentBytes() <= 2L * DECK_SIZE * CARD_BYTES);
+
+        catalog.open(planets.get(0)).close();
+
+        assertEquals(4, catalog.getLoadCount());
+    }
+
+    @Test
+    void testAssetStoreServesCatalogCards() throws IOException {
+        List<String> cards = writeDeck("cities", null);
+        DeckCatalog catalog = new DeckCatalog(tempDir, DECK_SIZE, ".png", Long.MAX_VALUE);
+
+        CardAssetStore store = new CardAssetStore(List.of(), catalog, Duration.ZERO);
+
+        assertTrue(store.contains(cards.get(0)));
+        try (InputStream in = store.open(cards.get(0))) {
+            assertEquals(CARD_BYTES, in.readAllBytes().length);
+        }
+    }
+
+    @Test
+    void testEmptyCatalog() {
+        DeckCatalog catalog = DeckCatalog.empty();
+
+        assertTrue(catalog.getDecks().isEmpty());
+        assertTrue(catalog.findDeck("cities").isEmpty());
+        assertFalse(catalog.contains("decks/cities/1.png"));
+    }
+
+    private List<String> writeDeck(String id, String title) throws IOException {
+        Path directory = Files.createDirectories(tempDir.resolve(id));
+        if (title != null) {
+            Files.writeString(directory.resolve("deck.properties"), "title=" + title);
+        }
+        List<String> cards = new ArrayList<>();
+        for (int i = 1; i <= DECK_SIZE; i++) {
+            Path card = directory.resolve(i + ".png");
+            byte[] bytes = new byte[CARD_BYTES];
+            bytes[0] = (byte) i;
+            Files.write(card, bytes);
+            cards.add(card.toString());
+        }
+        return cards;
+    }
+}
@@ -0,0 +1,67 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import java.util.concurrent.ThreadLocalRandom;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeckLayoutTest {
+
+    @ParameterizedTest
+    @CsvSource({"3, 7, 3, 10", "3, 9, 3, 13", "5, 5, 2, 12", "3, 3, 2, 4", "5, 7, 3, 17", "7, 7, 2, 24"})
+    void testRoundsAndSelectedCard(int piles, int pileSize, int rounds, int selectedCard) {
+        DeckLayout layout = DeckLayout.of(piles, pileSize);
+
+        assertEquals(piles * pileSize, layout.getDeckSize());
+        assertEquals(rounds, layout.getRounds());
+        assertEquals(selectedCard, layout.getSelectedCard());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"3, 7", "3, 9", "5, 5", "7, 3", "5, 9"})
+    void testGuessedCardAlwaysEndsAtSelectedIndex(int piles, int pileSize) {
+        DeckLayout layout = DeckLayout.of(piles, pileSize);
+
+        for (int card = 0; card < layout.getDeckSize(); card++) {
+            byte[] deck = shuffledDeck(layout.getDeckSize());
+            for (int round = 0; round < layout.getRounds(); round++) {
+                layout.apply(deck, indexOf(deck, card) / pileSize + 1);
+            }
+            assertEquals(card, deck[layout.getSelectedCard()]);
+        }
+    }
+
+    @Test
+    void testLayoutsAreCached() {
+        assertSame(DeckLayout.of(3, 9), DeckLayout.of(3, 9));
+    }
+
+    @Test
+    void testInvalidLayouts() {
+        assertThrows(IllegalArgumentException.class, () -> DeckLayout.of(4, 7));
+        assertThrows(IllegalArgumentException.class, () -> DeckLayout.of(3, 8));
+        assertThrows(IllegalArgumentException.class, () -> DeckLayout.of(1, 7));
+        assertThrows(IllegalArgumentException.class, () -> DeckLayout.of(3, 11));
+        assertThrows(IllegalArgumentException.class, () -> DeckLayout.of(15, 9));
+    }
+
+    private byte[] shuffledDeck(int size) {
+        byte[] deck = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int j = ThreadLocalRandom.current().nextInt(i + 1);
+            deck[i] = deck[j];
+            deck[j] = (byte) i;
+        }
+        return deck;
+    }
+
+    private int indexOf(byte[] deck, int card) {
+        for (int i = 0; i < deck.length; i++) {
+            if (deck[i] == card) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Card not found: " + card);
+    }
+}
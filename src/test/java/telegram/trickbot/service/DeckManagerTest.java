@@ -2,22 +2,27 @@ package telegram.trickbot.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 import static org.junit.jupiter.api.Assertions.*;
 
 class DeckManagerTest {
     private DeckManager deckManager;
+    private byte[] deck;
 
     @BeforeEach
     void setUp() {
         deckManager = new DeckManager("path/", ".jpg");
+        deck = deckManager.newDeck();
     }
 
     @Test
     void testDeckInitialization() {
-        List<String> pile1 = deckManager.getPile1();
-        List<String> pile2 = deckManager.getPile2();
-        List<String> pile3 = deckManager.getPile3();
+        List<String> pile1 = deckManager.getPile1(deck);
+        List<String> pile2 = deckManager.getPile2(deck);
+        List<String> pile3 = deckManager.getPile3(deck);
 
         assertEquals(7, pile1.size(), "Pile 1 should have 7 cards");
         assertEquals(7, pile2.size(), "Pile 2 should have 7 cards");
@@ -28,21 +33,21 @@ class DeckManagerTest {
 
     @Test
     void testShuffleDeck() {
-        List<String> beforeShuffle = List.copyOf(deckManager.getPile1());
-        deckManager.shuffleDeck();
-        List<String> afterShuffle = deckManager.getPile1();
+        deckManager.shuffleDeck(deck);
+        List<String> afterShuffle = deckManager.getPile1(deck);
 
         assertNotNull(afterShuffle);
         assertEquals(7, afterShuffle.size());
+        assertEquals(21, IntStream.range(0, 21).map(i -> deck[i]).distinct().count(), "Shuffle should keep every card");
     }
 
     @Test
     void testUpdateDeck_ChosenPile1() {
-        List<String> beforeUpdate = List.copyOf(deckManager.getPile1());
+        List<String> beforeUpdate = List.copyOf(deckManager.getPile1(deck));
 
-        deckManager.updateDeck(1);
+        deckManager.updateDeck(deck, 1);
 
-        List<String> afterUpdate = deckManager.getPile1();
+        List<String> afterUpdate = deckManager.getPile1(deck);
 
         assertNotNull(afterUpdate);
         assertEquals(7, afterUpdate.size());
@@ -51,11 +56,11 @@ class DeckManagerTest {
 
     @Test
     void testUpdateDeck_ChosenPile2() {
-        List<String> beforeUpdate = List.copyOf(deckManager.getPile2());
+        List<String> beforeUpdate = List.copyOf(deckManager.getPile2(deck));
 
-        deckManager.updateDeck(2);
+        deckManager.updateDeck(deck, 2);
 
-        List<String> afterUpdate = deckManager.getPile2();
+        List<String> afterUpdate = deckManager.getPile2(deck);
 
         assertNotNull(afterUpdate);
         assertEquals(7, afterUpdate.size());
@@ -64,23 +69,99 @@ class DeckManagerTest {
 
     @Test
     void testUpdateDeck_ChosenPile3() {
-        List<String> beforeUpdate = List.copyOf(deckManager.getPile3());
+        List<String> beforeUpdate = List.copyOf(deckManager.getPile3(deck));
 
-        deckManager.updateDeck(3);
+        deckManager.updateDeck(deck, 3);
 
-        List<String> afterUpdate = deckManager.getPile3();
+        List<String> afterUpdate = deckManager.getPile3(deck);
 
         assertNotNull(afterUpdate);
         assertEquals(7, afterUpdate.size());
         assertNotEquals(beforeUpdate, afterUpdate, "Deck should change after update with pile 3");
     }
 
+    @Test
+    void testUpdateDeck_InvalidPile() {
+        byte[] before = deck.clone();
+
+        assertThrows(IllegalArgumentException.class, () -> deckManager.updateDeck(deck, 4));
+        assertArrayEquals(before, deck);
+    }
+
+    @Test
+    void testUpdateDeck_MatchesListAlgorithm() {
+        for (int trial = 0; trial < 1000; trial++) {
+            byte[] deck = deckManager.newDeck();
+            List<String> expected = paths(deck);
+
+            for (int chosenPile : new int[]{trial % 3 + 1, trial / 3 % 3 + 1, trial / 9 % 3 + 1}) {
+                deckManager.updateDeck(deck, chosenPile);
+                expected = listUpdateDeck(expected, chosenPile);
+                assertEquals(expected, paths(deck));
+            }
+            assertEquals(expected.get(10), deckManager.getSelectedCard(deck));
+        }
+    }
+
     @Test
     void testGetSelectedCard() {
-        String selectedCard = deckManager.getSelectedCard();
+        String selectedCard = deckManager.getSelectedCard(deck);
 
         assertNotNull(selectedCard);
         assertTrue(selectedCard.contains("path/"), "Selected card should contain path prefix");
         assertTrue(selectedCard.contains(".jpg"), "Selected card should contain extension suffix");
     }
+
+    @Test
+    void testNewDeck_IsIndependentCopy() {
+        byte[] other = deckManager.newDeck();
+        byte[] otherBefore = other.clone();
+
+        deckManager.updateDeck(deck, 1);
+
+        assertNotSame(deck, other);
+        assertArrayEquals(otherBefore, other);
+        assertEquals(21, deckManager.getCards().size());
+    }
+
+    @Test
+    void testSelectedCardIsTheChosenOne() {
+        for (int card = 0; card < 21; card++) {
+            byte[] deck = deckManager.newDeck();
+            for (int round = 0; round < 3; round++) {
+                int position = indexOf(deck, card);
+                deckManager.updateDeck(deck, position / 7 + 1);
+            }
+            assertEquals(deckManager.getCards().get(card), deckManager.getSelectedCard(deck));
+        }
+    }
+
+    private List<String> paths(byte[] deck) {
+        List<String> paths = new ArrayList<>();
+        for (byte card : deck) {
+            paths.add(deckManager.getCards().get(card));
+        }
+        return paths;
+    }
+
+    private int indexOf(byte[] deck, int card) {
+        return IntStream.range(0, deck.length).filter(i -> deck[i] == card).findFirst().orElseThrow();
+    }
+
+    private List<String> listUpdateDeck(List<String> deck, int chosenPile) {
+        List<String> pile1 = deck.subList(0, 7);
+        List<String> pile2 = deck.subList(7, 14);
+        List<String> pile3 = deck.subList(14, 21);
+        List<List<String>> order = switch (chosenPile) {
+            case 1 -> List.of(pile2, pile1, pile3);
+            case 2 -> List.of(pile1, pile2, pile3);
+            default -> List.of(pile1, pile3, pile2);
+        };
+        List<String> gathered = new ArrayList<>();
+        order.forEach(gathered::addAll);
+
+        List<String> updated = new ArrayList<>();
+        Arrays.asList(0, 1, 2).forEach(pile -> IntStream.range(0, 7).forEach(j -> updated.add(gathered.get(j * 3 + pile))));
+        return updated;
+    }
 }
@@ -2,29 +2,49 @@ package telegram.trickbot.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.stubbing.Answer;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
 import org.telegram.telegrambots.meta.api.methods.send.SendMediaGroup;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import telegram.trickbot.metrics.BotMetrics;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class MessagesManagerTest {
     private TelegramLongPollingBot bot;
+    private CardMediaCache mediaCache;
     private MessagesManager messagesManager;
 
     @BeforeEach
     void setUp() {
         bot = mock(TelegramLongPollingBot.class);
-        messagesManager = new MessagesManager(bot);
+        mediaCache = new CardMediaCache();
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited());
     }
 
     @Test
     void testSendWelcomeMessage_success() throws TelegramApiException {
-        messagesManager.sendWelcomeMessage(123L, "TestUser");
+        messagesManager.sendWelcomeMessage(123L, "TestUser", 3);
 
         verify(bot, times(1)).execute(any(SendMessage.class));
     }
@@ -33,7 +53,7 @@ class MessagesManagerTest {
     void testSendWelcomeMessage_exception() throws TelegramApiException {
         doThrow(new TelegramApiException("test")).when(bot).execute(any(SendMessage.class));
 
-        assertDoesNotThrow(() -> messagesManager.sendWelcomeMessage(123L, "TestUser"));
+        assertDoesNotThrow(() -> messagesManager.sendWelcomeMessage(123L, "TestUser", 3));
 
         verify(bot, times(1)).execute(any(SendMessage.class));
     }
@@ -107,10 +127,364 @@ class MessagesManagerTest {
 
     @Test
     void testCreateInlineKeyboard() {
-        InlineKeyboardMarkup keyboardMarkup = messagesManager.createInlineKeyboard();
+        InlineKeyboardMarkup keyboardMarkup = messagesManager.createInlineKeyboard(3);
 
         assertNotNull(keyboardMarkup);
         assertEquals(1, keyboardMarkup.getKeyboard().size());
         assertEquals(3, keyboardMarkup.getKeyboard().get(0).size());
     }
+
+    @Test
+    void testCreateInlineKeyboard_WrapsRows() {
+        InlineKeyboardMarkup keyboardMarkup = messagesManager.createInlineKeyboard(5);
+
+        assertEquals(2, keyboardMarkup.getKeyboard().size());
+        assertEquals(3, keyboardMarkup.getKeyboard().get(0).size());
+        assertEquals("5", keyboardMarkup.getKeyboard().get(1).get(1).getCallbackData());
+    }
+
+    @Test
+    void testSendWelcomeMessage_mentionsRounds() throws TelegramApiException {
+        messagesManager.sendWelcomeMessage(123L, "TestUser", 3);
+
+        verify(bot).execute(argThat((SendMessage method) -> method.getText().contains("три раза подряд")));
+    }
+
+    @Test
+    void testSendWelcomeMessage_InsertsUserNameIntoTemplate() throws TelegramApiException {
+        messagesManager.sendWelcomeMessage(123L, "Anna", 3);
+        messagesManager.sendWelcomeMessage(124L, "100%s", 3);
+
+        verify(bot).execute(argThat((SendMessage method) -> method.getText().startsWith("Приветствую вас, Anna! ")));
+        verify(bot).execute(argThat((SendMessage method) -> method.getText().startsWith("Приветствую вас, 100%s! ")
+                && method.getText().contains("три раза подряд")));
+    }
+
+    @Test
+    void testSendMediaGroup_cachesFileIds() throws TelegramApiException {
+        when(bot.execute(any(SendMediaGroup.class)))
+                .thenReturn(List.of(photoMessage("id1"), photoMessage("id2")));
+
+        messagesManager.sendMediaGroup(321L, List.of("photo1.jpg", "photo2.jpg"));
+
+        assertEquals("id1", mediaCache.getFileId("photo1.jpg"));
+        assertEquals("id2", mediaCache.getFileId("photo2.jpg"));
+    }
+
+    @Test
+    void testSendMediaGroup_reusesCachedFileIds() throws TelegramApiException {
+        mediaCache.put("photo1.jpg", "id1");
+
+        messagesManager.sendMediaGroup(321L, List.of("photo1.jpg"));
+
+        verify(bot).execute(argThat((SendMediaGroup method) ->
+                "id1".equals(method.getMedias().get(0).getMedia()) && !method.getMedias().get(0).isNewMedia()));
+    }
+
+    @Test
+    void testSendMediaGroup_invalidatesStaleFileIds() throws TelegramApiException {
+        mediaCache.put("photo1.jpg", "stale");
+        when(bot.execute(any(SendMediaGroup.class)))
+                .thenThrow(new TelegramApiException("wrong file identifier"))
+                .thenReturn(List.of(photoMessage("fresh")));
+
+        messagesManager.sendMediaGroup(321L, List.of("photo1.jpg"));
+
+        verify(bot, times(2)).execute(any(SendMediaGroup.class));
+        assertEquals("fresh", mediaCache.getFileId("photo1.jpg"));
+    }
+
+    @Test
+    void testSendPhoto_invalidatesStaleFileId() throws TelegramApiException {
+        mediaCache.put("photo.jpg", "stale");
+        when(bot.execute(any(SendPhoto.class)))
+                .thenThrow(new TelegramApiException("wrong file identifier"))
+                .thenReturn(photoMessage("fresh"));
+
+        messagesManager.sendPhoto(789L, "photo.jpg", "Caption");
+
+        verify(bot, times(2)).execute(any(SendPhoto.class));
+        assertEquals("fresh", mediaCache.getFileId("photo.jpg"));
+    }
+
+    @Test
+    void testSendPile_SendsOneCollagePhoto(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(),
+                new PileRenderer(true, 4, 32, 4, 8), CardAssetStore.empty(), new BotMetrics());
+
+        messagesManager.sendPile(321L, List.of(card.toString(), card.toString()));
+
+        verify(bot).execute(argThat((SendPhoto method) -> method.getPhoto().isNew()));
+        verify(bot, never()).execute(any(SendMediaGroup.class));
+    }
+
+    @Test
+    void testSendPile_ReusesCollageFileId(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(),
+                new PileRenderer(true, 4, 32, 4, 8), CardAssetStore.empty(), new BotMetrics());
+        when(bot.execute(any(SendPhoto.class))).thenReturn(photoMessage("collage"));
+        List<String> pile = List.of(card.toString(), card.toString());
+
+        messagesManager.sendPile(321L, pile, "СТОПКА 1", null);
+        messagesManager.sendPile(654L, pile, "СТОПКА 1", null);
+        assertTrue(messagesManager.editPile(987L, 42, pile, "СТОПКА 1", null));
+
+        verify(bot, times(1)).execute(argThat((SendPhoto method) -> method.getPhoto().isNew()));
+        verify(bot).execute(argThat((SendPhoto method) -> method.getChatId().equals("654")
+                && !method.getPhoto().isNew() && "collage".equals(method.getPhoto().getAttachName())));
+        verify(bot).execute(argThat((EditMessageMedia method) -> !method.getMedia().isNewMedia()
+                && "collage".equals(method.getMedia().getMedia())));
+    }
+
+    @Test
+    void testSendPile_UploadsAgainWhenCollageFileIdIsRejected(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        PileRenderer renderer = new PileRenderer(true, 4, 32, 4, 8);
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(), renderer,
+                CardAssetStore.empty(), new BotMetrics());
+        renderer.collage(List.of(card.toString())).setFileId("stale");
+        when(bot.execute(any(SendPhoto.class)))
+                .thenThrow(new TelegramApiException("wrong file identifier"))
+                .thenReturn(photoMessage("fresh"));
+
+        messagesManager.sendPile(321L, List.of(card.toString()), "СТОПКА 1", null);
+
+        verify(bot).execute(argThat((SendPhoto method) -> method.getPhoto().isNew()));
+        assertEquals("fresh", renderer.collage(List.of(card.toString())).getFileId());
+    }
+
+    @Test
+    void testSendPile_FallsBackToMediaGroup() throws TelegramApiException {
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(),
+                new PileRenderer(true, 4, 32, 4, 8), CardAssetStore.empty(), new BotMetrics());
+
+        messagesManager.sendPile(321L, List.of("missing.jpg"));
+
+        verify(bot).execute(any(SendMediaGroup.class));
+        verify(bot, never()).execute(any(SendPhoto.class));
+    }
+
+    @Test
+    void testSendPile_AttachesCaptionAndKeyboard(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(),
+                new PileRenderer(true, 4, 32, 4, 8), CardAssetStore.empty(), new BotMetrics());
+        InlineKeyboardMarkup keyboard = messagesManager.createInlineKeyboard(3);
+
+        messagesManager.sendPile(321L, List.of(card.toString()), "СТОПКА 3", keyboard);
+
+        verify(bot).execute(argThat((SendPhoto method) ->
+                "СТОПКА 3".equals(method.getCaption()) && method.getReplyMarkup() == keyboard));
+    }
+
+    @Test
+    void testEditPile_ReplacesMediaInPlace(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(),
+                new PileRenderer(true, 4, 32, 4, 8), CardAssetStore.empty(), new BotMetrics());
+
+        assertTrue(messagesManager.editPile(321L, 42, List.of(card.toString()), "СТОПКА 1", null));
+
+        verify(bot).execute(argThat((EditMessageMedia method) -> method.getMessageId() == 42
+                && method.getMedia().isNewMedia() && "СТОПКА 1".equals(method.getMedia().getCaption())));
+    }
+
+    @Test
+    void testEditPile_ReportsFailure(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(),
+                new PileRenderer(true, 4, 32, 4, 8), CardAssetStore.empty(), new BotMetrics());
+        when(bot.execute(any(EditMessageMedia.class))).thenThrow(new TelegramApiException("message to edit not found"));
+
+        assertFalse(messagesManager.editPile(321L, 42, List.of(card.toString()), "СТОПКА 1", null));
+    }
+
+    @Test
+    void testEditPile_RetryAfter429UploadsFullCollage(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        PileRenderer renderer = new PileRenderer(true, 4, 32, 4, 8);
+        messagesManager = new MessagesManager(bot, mediaCache, new OutboundRateLimiter(1000, 1000, 1000, 1000, 1),
+                renderer, CardAssetStore.empty(), new BotMetrics());
+        List<Integer> uploaded = new ArrayList<>();
+        when(bot.execute(any(EditMessageMedia.class))).thenAnswer(invocation -> {
+            EditMessageMedia method = invocation.getArgument(0);
+            uploaded.add(method.getMedia().getNewMediaStream().readAllBytes().length);
+            if (uploaded.size() == 1) {
+                throw tooManyRequests();
+            }
+            return photoMessage("collage");
+        });
+
+        assertTrue(messagesManager.editPile(321L, 42, List.of(card.toString()), "СТОПКА 1", null));
+
+        int size = renderer.collage(List.of(card.toString())).getPng().length;
+        assertEquals(List.of(size, size), uploaded);
+    }
+
+    @Test
+    void testEditPile_FailsWithoutFallbackWhileRateLimited(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        messagesManager = new MessagesManager(bot, mediaCache, new OutboundRateLimiter(1000, 1000, 1000, 1000, 0),
+                new PileRenderer(true, 4, 32, 4, 8), CardAssetStore.empty(), new BotMetrics());
+        TelegramApiRequestException tooManyRequests = tooManyRequests();
+        when(bot.execute(any(EditMessageMedia.class))).thenThrow(tooManyRequests);
+
+        assertThrows(OutboundRateLimiter.RateLimitedException.class,
+                () -> messagesManager.editPile(321L, 42, List.of(card.toString()), "СТОПКА 1", null));
+        verify(bot, never()).execute(any(SendPhoto.class));
+    }
+
+    @Test
+    void testEditPile_WithoutCollagesIsNotPossible() throws TelegramApiException {
+        assertFalse(messagesManager.editPile(321L, 42, List.of("photo.jpg"), "СТОПКА 1", null));
+
+        verify(bot, never()).execute(any(EditMessageMedia.class));
+    }
+
+    @Test
+    void testSendMediaGroup_CaptionsFirstPhoto() throws TelegramApiException {
+        mediaCache.remember("1.jpg", photoMessage("one"));
+        mediaCache.remember("2.jpg", photoMessage("two"));
+
+        messagesManager.sendMediaGroup(321L, List.of("1.jpg", "2.jpg"), "СТОПКА 2");
+
+        verify(bot).execute(argThat((SendMediaGroup method) -> "СТОПКА 2".equals(method.getMedias().get(0).getCaption())
+                && method.getMedias().get(1).getCaption() == null));
+    }
+
+    @Test
+    void testSendMediaGroup_ReusesTemplateWhileFileIdsMatch() throws TelegramApiException {
+        RequestTemplateCache templates = new RequestTemplateCache(16);
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(), PileRenderer.disabled(),
+                CardAssetStore.empty(), new BotMetrics(), templates);
+        mediaCache.put("1.jpg", "one");
+        mediaCache.put("2.jpg", "two");
+
+        messagesManager.sendMediaGroup(321L, List.of("1.jpg", "2.jpg"), "СТОПКА 2");
+        messagesManager.sendMediaGroup(654L, List.of("1.jpg", "2.jpg"), "СТОПКА 2");
+        mediaCache.put("2.jpg", "three");
+        messagesManager.sendMediaGroup(987L, List.of("1.jpg", "2.jpg"), "СТОПКА 2");
+
+        assertEquals(1, templates.getHitCount());
+        assertEquals(2, templates.getMissCount());
+        verify(bot).execute(argThat((SendMediaGroup method) -> method.getChatId().equals("987")
+                && "three".equals(method.getMedias().get(1).getMedia())));
+    }
+
+    @Test
+    void testCreateInlineKeyboard_ReusesMarkup() {
+        InlineKeyboardMarkup first = messagesManager.createInlineKeyboard(List.of("0:1", "0:2", "0:3"));
+
+        assertSame(first, messagesManager.createInlineKeyboard(List.of("0:1", "0:2", "0:3")));
+        assertNotSame(first, messagesManager.buildInlineKeyboard(List.of("0:1", "0:2", "0:3")));
+        assertThrows(UnsupportedOperationException.class, () -> first.getKeyboard().get(0).clear());
+    }
+
+    @Test
+    void testSendMediaGroup_RetryAfter429UploadsFullStreams(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        messagesManager = new MessagesManager(bot, mediaCache, new OutboundRateLimiter(1000, 1000, 1000, 1000, 1),
+                PileRenderer.disabled(), new CardAssetStore(List.of(card.toString()), Duration.ZERO), new BotMetrics());
+        List<Integer> uploaded = new ArrayList<>();
+        when(bot.execute(any(SendMediaGroup.class))).thenAnswer(invocation -> {
+            SendMediaGroup method = invocation.getArgument(0);
+            uploaded.add(method.getMedias().get(0).getNewMediaStream().readAllBytes().length);
+            if (uploaded.size() == 1) {
+                throw tooManyRequests();
+            }
+            return List.of(photoMessage("one"));
+        });
+
+        messagesManager.sendMediaGroup(321L, List.of(card.toString(), card.toString()));
+
+        assertEquals(List.of((int) Files.size(card), (int) Files.size(card)), uploaded);
+        assertEquals("one", mediaCache.getFileId(card.toString()));
+    }
+
+    @Test
+    void testSendPhoto_StreamsFromAssetStore(@TempDir Path tempDir) throws Exception {
+        Path card = tempDir.resolve("1.png");
+        ImageIO.write(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(), PileRenderer.disabled(),
+                new CardAssetStore(List.of(card.toString()), Duration.ZERO), new BotMetrics());
+
+        messagesManager.sendPhoto(789L, card.toString(), "Caption");
+
+        verify(bot).execute(argThat((SendPhoto method) ->
+                method.getPhoto().getNewMediaStream() != null && "1.png".equals(method.getPhoto().getMediaName())));
+    }
+
+    @Test
+    void testSendTextMessage_IsNotLimitedToTwoConnections() throws Exception {
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(bot.execute(any(SendMessage.class))).thenAnswer(trackInFlight(maxInFlight, new Message()));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 20; i++) {
+                long chatId = i;
+                executor.execute(() -> messagesManager.sendTextMessage(chatId, "Hello"));
+            }
+        }
+
+        verify(bot, times(20)).execute(any(SendMessage.class));
+        assertTrue(maxInFlight.get() > 2, "in flight " + maxInFlight.get());
+    }
+
+    @Test
+    void testAnswerCallbackQuery_WaitsForACallbackConnection() throws Exception {
+        messagesManager = new MessagesManager(bot, mediaCache, OutboundRateLimiter.unlimited(), PileRenderer.disabled(),
+                CardAssetStore.empty(), new BotMetrics(), new RequestTemplateCache(), 2);
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(bot.execute(any(AnswerCallbackQuery.class))).thenAnswer(trackInFlight(maxInFlight, true));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 20; i++) {
+                String queryId = "query-" + i;
+                executor.execute(() -> messagesManager.answerCallbackQuery(queryId));
+            }
+        }
+
+        verify(bot, times(20)).execute(any(AnswerCallbackQuery.class));
+        assertTrue(maxInFlight.get() <= 2, "in flight " + maxInFlight.get());
+    }
+
+    private static Answer<Object> trackInFlight(AtomicInteger maxInFlight, Object result) {
+        AtomicInteger inFlight = new AtomicInteger();
+        return invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return result;
+        };
+    }
+
+    private TelegramApiRequestException tooManyRequests() {
+        TelegramApiRequestException exception = mock(TelegramApiRequestException.class);
+        when(exception.getErrorCode()).thenReturn(429);
+        when(exception.getParameters()).thenReturn(new ResponseParameters(null, 0));
+        return exception;
+    }
+
+    private Message photoMessage(String fileId) {
+        PhotoSize small = new PhotoSize();
+        small.setFileId(fileId + "-small");
+        small.setWidth(90);
+        PhotoSize large = new PhotoSize();
+        large.setFileId(fileId);
+        large.setWidth(800);
+        Message message = new Message();
+        message.setPhoto(List.of(small, large));
+        return message;
+    }
 }
@@ -0,0 +1,167 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import telegram.trickbot.metrics.BotMetrics;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OutboundPipelineTest {
+    private OutboundPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new OutboundPipeline(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void testSequenceKeepsOrderWithinChat() throws Exception {
+        List<Integer> sent = new CopyOnWriteArrayList<>();
+
+        pipeline.sequence(1L)
+                .send(() -> sent.add(1))
+                .delay(50)
+                .send(() -> sent.add(2))
+                .send(() -> sent.add(3))
+                .submit();
+        pipeline.sequence(1L)
+                .send(() -> sent.add(4))
+                .submit()
+                .get(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of(1, 2, 3, 4), sent);
+        assertEquals(0, pipeline.getPendingSteps());
+    }
+
+    @Test
+    void testSubmitDoesNotBlockCaller() {
+        long start = System.nanoTime();
+
+        pipeline.sequence(1L).delay(1000).send(() -> { }).submit();
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    }
+
+    @Test
+    void testDelayedChatDoesNotStallOtherChats() throws Exception {
+        CountDownLatch otherChatSent = new CountDownLatch(1);
+
+        pipeline.sequence(1L).delay(2000).send(() -> { }).submit();
+        pipeline.sequence(2L).send(otherChatSent::countDown).submit();
+
+        assertTrue(otherChatSent.await(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void testFailingStepDoesNotBreakSequence() throws Exception {
+        List<Integer> sent = new CopyOnWriteArrayList<>();
+
+        pipeline.sequence(1L)
+                .send(() -> { throw new IllegalStateException("test"); })
+                .send(() -> sent.add(2))
+                .submit()
+                .get(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of(2), sent);
+    }
+
+    @Test
+    void testHigherPriorityJumpsQueueWhenSaturated() throws Exception {
+        BotMetrics metrics = new BotMetrics();
+        OutboundPipeline saturated = new OutboundPipeline(Executors.newFixedThreadPool(1), metrics, 1, Duration.ZERO);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> sent = new CopyOnWriteArrayList<>();
+
+        saturated.sequence(1L).send(() -> await(release)).submit();
+        saturated.sequence(2L, OutboundPipeline.Priority.NEW_GAME).send(() -> sent.add("new game")).submit();
+        saturated.sequence(3L, OutboundPipeline.Priority.ROUND).send(() -> sent.add("round")).submit();
+        saturated.sequence(4L, OutboundPipeline.Priority.REVEAL).send(() -> sent.add("reveal")).submit();
+        assertEquals(3, saturated.getQueuedSteps());
+        release.countDown();
+        saturated.sequence(5L, OutboundPipeline.Priority.NEW_GAME).send(() -> { }).submit().get(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of("reveal", "round", "new game"), sent);
+        assertTrue(metrics.scrape().contains("trickbot_outbound_wait_seconds_count{priority=\"reveal\"} 1"));
+        saturated.shutdown();
+    }
+
+    @Test
+    void testWaitingStepIsPromotedByAging() throws Exception {
+        OutboundPipeline saturated = new OutboundPipeline(Executors.newFixedThreadPool(1), new BotMetrics(), 1,
+                Duration.ofMillis(20));
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> sent = new CopyOnWriteArrayList<>();
+
+        saturated.sequence(1L).send(() -> await(release)).submit();
+        saturated.sequence(2L, OutboundPipeline.Priority.NEW_GAME).send(() -> sent.add("new game")).submit();
+        Thread.sleep(100);
+        saturated.sequence(3L, OutboundPipeline.Priority.REVEAL).send(() -> sent.add("reveal")).submit();
+        release.countDown();
+        saturated.sequence(4L, OutboundPipeline.Priority.NEW_GAME).send(() -> { }).submit().get(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of("new game", "reveal"), sent);
+        saturated.shutdown();
+    }
+
+    @Test
+    void testRateLimitedStepGivesUpItsSlotWhileBackingOff() throws Exception {
+        OutboundRateLimiter rateLimiter = new OutboundRateLimiter(1000, 1000, 1000, 1000, 1);
+        OutboundPipeline saturated = new OutboundPipeline(Executors.newVirtualThreadPerTaskExecutor(), new BotMetrics(),
+                1, Duration.ZERO);
+        TelegramApiRequestException tooManyRequests = mock(TelegramApiRequestException.class);
+        when(tooManyRequests.getErrorCode()).thenReturn(429);
+        when(tooManyRequests.getParameters()).thenReturn(new ResponseParameters(null, 1));
+        CountDownLatch backingOff = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        List<String> sent = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> limited = saturated.sequence(1L).send(() -> {
+            try {
+                rateLimiter.execute(1L, () -> {
+                    if (attempts.incrementAndGet() == 1) {
+                        backingOff.countDown();
+                        throw tooManyRequests;
+                    }
+                    return sent.add("limited");
+                });
+            }
+            catch (TelegramApiException e) {
+                throw new IllegalStateException(e);
+            }
+        }).submit();
+        assertTrue(backingOff.await(1, TimeUnit.SECONDS));
+        saturated.sequence(2L).send(() -> sent.add("other")).submit().get(500, TimeUnit.MILLISECONDS);
+        limited.get(3, TimeUnit.SECONDS);
+
+        assertEquals(List.of("other", "limited"), sent);
+        assertEquals(0, saturated.getQueuedSteps());
+        saturated.shutdown();
+        rateLimiter.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(2, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
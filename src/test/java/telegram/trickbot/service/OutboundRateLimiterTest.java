@@ -0,0 +1,102 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OutboundRateLimiterTest {
+    private OutboundRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new OutboundRateLimiter(1000, 10, 2, 20, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rateLimiter.shutdown();
+    }
+
+    @Test
+    void testChatBurstIsThrottled() throws TelegramApiException {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.execute(1L, () -> "ok");
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 80);
+        assertEquals(1, rateLimiter.getThrottledCount());
+    }
+
+    @Test
+    void testChatsHaveSeparateBuckets() throws TelegramApiException {
+        for (long chatId = 1; chatId <= 10; chatId++) {
+            rateLimiter.execute(chatId, () -> "ok");
+        }
+
+        assertEquals(0, rateLimiter.getThrottledCount());
+    }
+
+    @Test
+    void testTooManyRequestsHonorsRetryAfter() throws TelegramApiException {
+        AtomicInteger calls = new AtomicInteger();
+        TelegramApiRequestException tooManyRequests = tooManyRequests(1);
+        long start = System.nanoTime();
+
+        String result = rateLimiter.execute(1L, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw tooManyRequests;
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(1, rateLimiter.getRetryCount());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    }
+
+    @Test
+    void testTooManyRequestsGivesUpAfterMaxRetries() {
+        TelegramApiRequestException tooManyRequests = tooManyRequests(0);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(TelegramApiRequestException.class, () -> rateLimiter.execute(1L, () -> {
+            calls.incrementAndGet();
+            throw tooManyRequests;
+        }));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testOtherErrorsAreNotRetried() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(TelegramApiException.class, () -> rateLimiter.execute(1L, () -> {
+            calls.incrementAndGet();
+            throw new TelegramApiRequestException("Bad Request");
+        }));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testBusyBucketIsNotEvicted() throws TelegramApiException {
+        rateLimiter.execute(1L, () -> "ok");
+
+        assertEquals(0, rateLimiter.evictIdleBuckets());
+    }
+
+    private TelegramApiRequestException tooManyRequests(int retryAfter) {
+        TelegramApiRequestException exception = mock(TelegramApiRequestException.class);
+        when(exception.getErrorCode()).thenReturn(429);
+        when(exception.getParameters()).thenReturn(new ResponseParameters(null, retryAfter));
+        return exception;
+    }
+}
@@ -0,0 +1,78 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PileRendererTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<String> cards = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 1; i <= 7; i++) {
+            Path card = tempDir.resolve(i + ".png");
+            ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "png", card.toFile());
+            cards.add(card.toString());
+        }
+    }
+
+    @Test
+    void testRender_LaysOutPileInGrid() throws IOException {
+        PileRenderer renderer = new PileRenderer(true, 4, 100, 10, 8);
+
+        BufferedImage collage = ImageIO.read(new ByteArrayInputStream(renderer.render(cards)));
+
+        assertEquals(4 * 110 + 10, collage.getWidth());
+        assertEquals(2 * 110 + 10, collage.getHeight());
+    }
+
+    @Test
+    void testRender_ServesRecurringPileFromCache() throws IOException {
+        PileRenderer renderer = new PileRenderer(true, 4, 100, 10, 8);
+
+        byte[] first = renderer.render(cards);
+        byte[] second = renderer.render(new ArrayList<>(cards));
+
+        assertSame(first, second);
+        assertEquals(1, renderer.getHitCount());
+        assertEquals(1, renderer.getMissCount());
+    }
+
+    @Test
+    void testRender_EvictsLeastRecentlyUsedPile() throws IOException {
+        PileRenderer renderer = new PileRenderer(true, 4, 50, 0, 2);
+        List<String> a = cards.subList(0, 3);
+        List<String> b = cards.subList(3, 6);
+        List<String> c = cards.subList(4, 7);
+
+        renderer.render(a);
+        renderer.render(b);
+        renderer.render(a);
+        renderer.render(c);
+        renderer.render(a);
+        renderer.render(b);
+
+        assertEquals(2, renderer.size());
+        assertEquals(2, renderer.getHitCount());
+        assertEquals(4, renderer.getMissCount());
+    }
+
+    @Test
+    void testRender_MissingCardFails() {
+        PileRenderer renderer = new PileRenderer(true, 4, 100, 10, 8);
+
+        assertThrows(IOException.class, () -> renderer.render(List.of(tempDir.resolve("missing.png").toString())));
+    }
+}
@@ -0,0 +1,56 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RoundComposerTest {
+    private MessagesManager messagesManager;
+
+    @BeforeEach
+    void setUp() {
+        messagesManager = mock(MessagesManager.class);
+        Message message = new Message();
+        message.setMessageId(7);
+        when(messagesManager.sendPile(anyLong(), anyList(), anyString(), any())).thenReturn(message);
+    }
+
+    @Test
+    void testFailedEditSendsNewMessage() {
+        RoundComposer composer = new RoundComposer(messagesManager);
+        composer.showPile(1L, 0, 1, 1, List.of("1.jpg"), null);
+
+        composer.showPile(1L, 1, 1, 1, List.of("2.jpg"), null);
+
+        verify(messagesManager).editPile(eq(1L), eq(7), eq(List.of("2.jpg")), contains("СТОПКА 1"), isNull());
+        verify(messagesManager, times(2)).sendPile(eq(1L), anyList(), contains("СТОПКА 1"), isNull());
+    }
+
+    @Test
+    void testEditingDisabledAlwaysSends() {
+        RoundComposer composer = new RoundComposer(messagesManager, false, 10);
+        InlineKeyboardMarkup keyboard = new InlineKeyboardMarkup();
+        composer.showPile(1L, 0, 1, 1, List.of("1.jpg"), keyboard);
+
+        composer.showPile(1L, 1, 1, 1, List.of("2.jpg"), keyboard);
+
+        verify(messagesManager, never()).editPile(anyLong(), anyInt(), anyList(), anyString(), any());
+        verify(messagesManager, times(2)).sendPile(eq(1L), anyList(), contains(RoundComposer.QUESTION), eq(keyboard));
+    }
+
+    @Test
+    void testRemembersBoundedNumberOfChats() {
+        RoundComposer composer = new RoundComposer(messagesManager, true, 2);
+
+        for (long chatId = 1; chatId <= 5; chatId++) {
+            composer.showPile(chatId, 0, 1, 3, List.of("1.jpg"), null);
+        }
+        composer.clear(5L);
+
+        assertEquals(1, composer.size());
+    }
+}
@@ -0,0 +1,125 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Plays simulated tricks in parallel with seeds from {@link ShuffleService} and checks that every card lands in
+ * every position equally often and that the revealed card is always the one the player thought of. The number of
+ * tricks per layout is {@code -Dshuffle.tricks} (200 000 by default; raise it to millions for a release check).
+ */
+class ShuffleDistributionTest {
+    private static final int TRICKS = Integer.getInteger("shuffle.tricks", 200_000);
+    private static final int THREADS = 4;
+
+    @ParameterizedTest
+    @CsvSource({"3, 7", "3, 9", "5, 5", "3, 3"})
+    void testShuffleIsUniformAndRevealIsCorrect(int piles, int pileSize) throws Exception {
+        DeckManager deckManager = new DeckManager("path/", ".jpg", piles, pileSize, new ShuffleService());
+        DeckLayout layout = deckManager.getLayout();
+        int deckSize = layout.getDeckSize();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Tally>> tallies = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int tricks = TRICKS / THREADS;
+            tallies.add(executor.submit(() -> play(deckManager, tricks)));
+        }
+        Tally total = new Tally(deckSize, piles);
+        for (Future<Tally> tally : tallies) {
+            total.add(tally.get());
+        }
+        executor.shutdown();
+
+        assertEquals(0, total.wrongReveals, "Revealed card must be the chosen one");
+        double positions = chiSquare(total.positions, (double) total.tricks / deckSize);
+        int positionsFreedom = (deckSize - 1) * (deckSize - 1);
+        assertTrue(positions < limit(positionsFreedom),
+                "Card positions are not uniform: chi-square " + positions + " for " + positionsFreedom + " degrees of freedom");
+        double firstPiles = chiSquare(new long[][]{total.firstPiles}, (double) total.tricks / piles);
+        assertTrue(firstPiles < limit(piles - 1),
+                "Chosen card piles are not uniform: chi-square " + firstPiles + " for " + (piles - 1) + " degrees of freedom");
+    }
+
+    private static Tally play(DeckManager deckManager, int tricks) {
+        DeckLayout layout = deckManager.getLayout();
+        SplittableRandom player = new SplittableRandom(deckManager.nextSeed());
+        Tally tally = new Tally(layout.getDeckSize(), layout.getPiles());
+        for (int trick = 0; trick < tricks; trick++) {
+            byte[] deck = deckManager.newDeck(deckManager.nextSeed());
+            for (int position = 0; position < deck.length; position++) {
+                tally.positions[deck[position]][position]++;
+            }
+
+            int chosen = player.nextInt(deck.length);
+            for (int round = 0; round < layout.getRounds(); round++) {
+                int pile = indexOf(deck, chosen) / layout.getPileSize() + 1;
+                if (round == 0) {
+                    tally.firstPiles[pile - 1]++;
+                }
+                deckManager.updateDeck(deck, pile);
+            }
+            if (!deckManager.getCards().get(chosen).equals(deckManager.getSelectedCard(deck))) {
+                tally.wrongReveals++;
+            }
+            tally.tricks++;
+        }
+        return tally;
+    }
+
+    private static double chiSquare(long[][] observed, double expected) {
+        double sum = 0;
+        for (long[] row : observed) {
+            for (long count : row) {
+                sum += (count - expected) * (count - expected) / expected;
+            }
+        }
+        return sum;
+    }
+
+    // Six standard deviations above the mean of the chi-square distribution, so a fair shuffle practically never fails.
+    private static double limit(int degreesOfFreedom) {
+        return degreesOfFreedom + 6 * Math.sqrt(2.0 * degreesOfFreedom) + 10;
+    }
+
+    private static int indexOf(byte[] deck, int card) {
+        for (int i = 0; i < deck.length; i++) {
+            if (deck[i] == card) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Card " + card + " is missing from the deck");
+    }
+
+    private static final class Tally {
+        private final long[][] positions;
+        private final long[] firstPiles;
+        private long tricks;
+        private long wrongReveals;
+
+        private Tally(int deckSize, int piles) {
+            this.positions = new long[deckSize][deckSize];
+            this.firstPiles = new long[piles];
+        }
+
+        private void add(Tally other) {
+            for (int card = 0; card < positions.length; card++) {
+                for (int position = 0; position < positions.length; position++) {
+                    positions[card][position] += other.positions[card][position];
+                }
+            }
+            for (int pile = 0; pile < firstPiles.length; pile++) {
+                firstPiles[pile] += other.firstPiles[pile];
+            }
+            tricks += other.tricks;
+            wrongReveals += other.wrongReveals;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package telegram.trickbot.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShuffleServiceTest {
+    private final ShuffleService shuffleService = new ShuffleService();
+
+    @Test
+    void testSameSeedShufflesSameDeck() {
+        long seed = shuffleService.nextSeed();
+        byte[] first = ordered(21);
+        byte[] second = ordered(21);
+
+        shuffleService.shuffle(first, seed);
+        new ShuffleService().shuffle(second, seed);
+
+        assertArrayEquals(first, second);
+        byte[] sorted = first.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(ordered(21), sorted);
+    }
+
+    @Test
+    void testRecordedSeedReplaysSession() {
+        DeckManager deckManager = new DeckManager("path/", ".jpg", 3, 7, shuffleService);
+        long seed = deckManager.nextSeed();
+        byte[] deck = deckManager.newDeck(seed);
+        byte[] choices = {2, 1, 3};
+        for (byte choice : choices) {
+            deckManager.updateDeck(deck, choice);
+        }
+
+        assertArrayEquals(deck, deckManager.replayDeck(seed, choices));
+    }
+
+    @Test
+    void testParallelSeedsAreDistinct() throws InterruptedException {
+        Set<Long> seeds = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    seeds.add(shuffleService.nextSeed());
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(80_000, seeds.size());
+    }
+
+    private static byte[] ordered(int size) {
+        byte[] deck = new byte[size];
+        for (int i = 0; i < size; i++) {
+            deck[i] = (byte) i;
+        }
+        return deck;
+    }
+}
@@ -0,0 +1,211 @@
+package telegram.trickbot.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import telegram.trickbot.service.DeckManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionJournalTest {
+    private final DeckManager deckManager = new DeckManager("path/", ".jpg");
+    private final List<SessionManager> sessionManagers = new ArrayList<>();
+    private final List<SessionJournal> journals = new ArrayList<>();
+
+    @TempDir
+    private Path tempDir;
+    private Path file;
+
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("sessions.journal");
+    }
+
+    @AfterEach
+    void tearDown() {
+        journals.forEach(SessionJournal::shutdown);
+        sessionManagers.forEach(SessionManager::shutdown);
+    }
+
+    @Test
+    void testReplayRestoresGamesInProgress() {
+        SessionJournal journal = open(newSessionManager());
+        byte[] deck = deckManager.newDeck();
+        journal.recordShuffle(1L, deck);
+        deckManager.updateDeck(deck, 2);
+        journal.recordChoice(1L, 2, 1, deck);
+        journal.shutdown();
+
+        SessionManager restarted = newSessionManager();
+        open(restarted);
+
+        TrickSession session = restarted.findSession(1L).orElseThrow();
+        assertTrue(session.isStarted());
+        assertEquals(1, session.getStep());
+        assertArrayEquals(deck, session.getDeck());
+    }
+
+    @Test
+    void testReplayRestoresSelectedDeck() {
+        SessionJournal journal = open(newSessionManager());
+        byte[] deck = deckManager.newDeck();
+        journal.recordShuffle(1L, "cities", deck);
+        journal.recordChoice(1L, 2, 1, deck);
+        journal.shutdown();
+
+        SessionManager restarted = newSessionManager();
+        open(restarted);
+        SessionManager compacted = newSessionManager();
+        open(compacted);
+
+        assertEquals("cities", restarted.findSession(1L).orElseThrow().getDeckId());
+        assertEquals("cities", compacted.findSession(1L).orElseThrow().getDeckId());
+    }
+
+    @Test
+    void testReplaySkipsFinishedGames() {
+        SessionJournal journal = open(newSessionManager());
+        journal.recordShuffle(1L, deckManager.newDeck());
+        journal.recordShuffle(2L, deckManager.newDeck());
+        journal.recordFinish(1L);
+        journal.shutdown();
+
+        SessionManager restarted = newSessionManager();
+        open(restarted);
+
+        assertTrue(restarted.findSession(1L).isEmpty());
+        assertTrue(restarted.findSession(2L).isPresent());
+    }
+
+    @Test
+    void testReplayDropsTornTail() throws IOException {
+        SessionJournal journal = open(newSessionManager());
+        journal.recordShuffle(1L, deckManager.newDeck());
+        journal.shutdown();
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        SessionManager restarted = newSessionManager();
+        open(restarted);
+
+        assertTrue(restarted.findSession(1L).isPresent());
+    }
+
+    @Test
+    void testCompactionKeepsOneRecordPerGame() throws IOException {
+        SessionJournal journal = open(newSessionManager());
+        byte[] deck = deckManager.newDeck();
+        journal.recordShuffle(1L, deck);
+        for (int step = 1; step <= 100; step++) {
+            journal.recordChoice(1L, 1, step, deck);
+        }
+        journal.flush();
+        long before = Files.size(file);
+
+        journal.compact();
+
+        assertTrue(Files.size(file) < before / 50);
+        assertEquals(1, journal.size());
+    }
+
+    @Test
+    void testJournalingContinuesAfterFailedCompaction() throws IOException {
+        SessionJournal journal = open(newSessionManager());
+        byte[] first = deckManager.newDeck();
+        journal.recordShuffle(1L, first);
+        Files.createDirectory(tempDir.resolve("sessions.journal.tmp"));
+
+        journal.compact();
+        byte[] second = deckManager.newDeck();
+        journal.recordShuffle(2L, second);
+        journal.shutdown();
+
+        assertEquals(1, journal.getFailureCount());
+        SessionManager restarted = newSessionManager();
+        open(restarted);
+        assertArrayEquals(first, restarted.findSession(1L).orElseThrow().getDeck());
+        assertArrayEquals(second, restarted.findSession(2L).orElseThrow().getDeck());
+    }
+
+    @Test
+    void testAppendDoesNotWaitForDisk() {
+        SessionJournal journal = open(newSessionManager());
+        byte[] deck = deckManager.newDeck();
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            journal.recordChoice(i, 1, 1, deck);
+        }
+        long perAppend = (System.nanoTime() - started) / 10_000;
+
+        assertTrue(perAppend < Duration.ofMillis(1).toNanos(), "append took " + perAppend + " ns");
+    }
+
+    @Test
+    void testAppendsFromManyThreadsAreAllJournaled() throws InterruptedException {
+        SessionJournal journal = open(newSessionManager());
+        byte[] deck = deckManager.newDeck();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long first = t * 1_000L;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (long chatId = first; chatId < first + 1_000; chatId++) {
+                    journal.recordShuffle(chatId, deck);
+                    journal.recordChoice(chatId, 1, 1, deck);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        journal.shutdown();
+
+        SessionManager restarted = newSessionManager();
+        SessionJournal replayed = open(restarted);
+
+        assertEquals(8_000, replayed.size());
+        assertEquals(1, restarted.findSession(7_999L).orElseThrow().getStep());
+    }
+
+    @Test
+    void testJournalIsOffWithoutAFile() {
+        SessionJournal journal = new SessionJournal(newSessionManager(), deckManager, "", Duration.ofHours(1),
+                Duration.ZERO, Duration.ofMinutes(30));
+
+        journal.recordShuffle(1L, deckManager.newDeck());
+        journal.shutdown();
+
+        assertFalse(journal.isEnabled());
+        assertEquals(0, journal.size());
+    }
+
+    @Test
+    void testDisabledJournalWritesNothing() {
+        SessionJournal journal = SessionJournal.disabled();
+
+        journal.recordShuffle(1L, deckManager.newDeck());
+
+        assertFalse(journal.isEnabled());
+        assertEquals(0, journal.size());
+        assertFalse(Files.exists(file));
+    }
+
+    private SessionManager newSessionManager() {
+        SessionManager sessionManager = new SessionManager(Duration.ofMinutes(30), Duration.ofHours(1));
+        sessionManagers.add(sessionManager);
+        return sessionManager;
+    }
+
+    private SessionJournal open(SessionManager sessionManager) {
+        SessionJournal journal = new SessionJournal(sessionManager, deckManager, file.toString(),
+                Duration.ofHours(1), Duration.ZERO, Duration.ofMinutes(30));
+        journals.add(journal);
+        return journal;
+    }
+}
@@ -0,0 +1,70 @@
+package telegram.trickbot.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionManagerTest {
+    private SessionManager sessionManager;
+
+    @BeforeEach
+    void setUp() {
+        sessionManager = new SessionManager(Duration.ofMillis(50), Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionManager.shutdown();
+    }
+
+    @Test
+    void testGetSession_SameChatReturnsSameSession() {
+        TrickSession first = sessionManager.getSession(1L);
+        TrickSession second = sessionManager.getSession(1L);
+
+        assertSame(first, second);
+        assertNotSame(first, sessionManager.getSession(2L));
+        assertEquals(2, sessionManager.size());
+    }
+
+    @Test
+    void testSessionLifecycle() {
+        TrickSession session = sessionManager.getSession(1L);
+        assertFalse(session.isStarted());
+
+        session.start(new byte[21]);
+        assertTrue(session.isStarted());
+        assertEquals(1, session.nextStep());
+
+        session.finish();
+        assertFalse(session.isStarted());
+        assertEquals(0, session.getStep());
+    }
+
+    @Test
+    void testEvictIdleSessions() throws InterruptedException {
+        sessionManager.getSession(1L);
+        Thread.sleep(100);
+        sessionManager.getSession(2L);
+
+        assertEquals(1, sessionManager.evictIdleSessions());
+        assertTrue(sessionManager.findSession(1L).isEmpty());
+        assertTrue(sessionManager.findSession(2L).isPresent());
+    }
+
+    @Test
+    void testConcurrentAccess() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        IntStream.range(0, 10_000).forEach(i -> executor.execute(() -> sessionManager.getSession(i % 1000)));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1000, sessionManager.size());
+    }
+}
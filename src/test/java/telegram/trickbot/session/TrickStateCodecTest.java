@@ -0,0 +1,64 @@
+package telegram.trickbot.session;
+
+import org.junit.jupiter.api.Test;
+import telegram.trickbot.service.DeckLayout;
+import java.util.Optional;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrickStateCodecTest {
+    private final DeckLayout layout = DeckLayout.of(3, 7);
+    private final TrickStateCodec codec = new TrickStateCodec("secret");
+
+    @Test
+    void testRoundTrip() {
+        TrickState state = new TrickState(-123456789L, new byte[]{3, 1, 2});
+
+        String callbackData = codec.encode(42L, layout, state);
+        Optional<TrickState> decoded = codec.decode(42L, layout, callbackData);
+
+        assertTrue(TrickStateCodec.isEncoded(callbackData));
+        assertTrue(decoded.isPresent());
+        assertEquals(state.seed(), decoded.get().seed());
+        assertArrayEquals(state.choices(), decoded.get().choices());
+    }
+
+    @Test
+    void testFitsIntoCallbackData() {
+        TrickState state = new TrickState(Long.MIN_VALUE, new byte[]{3, 3, 3, 3, 3});
+
+        assertTrue(codec.encode(Long.MIN_VALUE, layout, state).length() <= 64);
+    }
+
+    @Test
+    void testTamperedStateIsRejected() {
+        String callbackData = codec.encode(42L, layout, new TrickState(1L, new byte[]{1}));
+        char last = callbackData.charAt(callbackData.length() - 1);
+        String tampered = callbackData.substring(0, callbackData.length() - 1) + (last == 'A' ? 'B' : 'A');
+
+        assertTrue(codec.decode(42L, layout, tampered).isEmpty());
+    }
+
+    @Test
+    void testStateIsBoundToChatAndLayout() {
+        String callbackData = codec.encode(42L, layout, new TrickState(1L, new byte[]{1}));
+
+        assertTrue(codec.decode(43L, layout, callbackData).isEmpty());
+        assertTrue(codec.decode(42L, DeckLayout.of(3, 9), callbackData).isEmpty());
+        assertTrue(new TrickStateCodec("other").decode(42L, layout, callbackData).isEmpty());
+    }
+
+    @Test
+    void testMalformedStateIsRejected() {
+        assertTrue(codec.decode(42L, layout, "t:***").isEmpty());
+        assertTrue(codec.decode(42L, layout, "t:AAAA").isEmpty());
+        assertTrue(codec.decode(42L, layout, "1").isEmpty());
+    }
+
+    @Test
+    void testChoose() {
+        TrickState state = new TrickState(7L, new byte[0]).choose(2).choose(3);
+
+        assertEquals(2, state.round());
+        assertArrayEquals(new byte[]{2, 3}, state.choices());
+    }
+}